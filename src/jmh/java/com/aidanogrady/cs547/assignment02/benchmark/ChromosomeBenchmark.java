@@ -0,0 +1,86 @@
+package com.aidanogrady.cs547.assignment02.benchmark;
+
+import com.aidanogrady.cs547.assignment02.model.TCChromosome;
+import com.aidanogrady.cs547.assignment02.model.TestCase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the operations on a single chromosome that every search spends
+ * its time in.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChromosomeBenchmark {
+    /**
+     * The first parent of crossovers, and the chromosome mutated and climbed.
+     */
+    private TCChromosome father;
+
+    /**
+     * The second parent of crossovers.
+     */
+    private TCChromosome mother;
+
+    /**
+     * The offset crossovers are performed at.
+     */
+    private int offset;
+
+    @Setup
+    public void setUp(SuiteState suite) {
+        father = TCChromosome.generateChromosome(suite.setSize, suite.cases, suite.rng);
+        mother = TCChromosome.generateChromosome(suite.setSize, suite.cases, suite.rng);
+        offset = suite.setSize / 2;
+    }
+
+    @Benchmark
+    public TCChromosome fitness(SuiteState suite) {
+        return new TCChromosome(suite.cases, father.getGenes());
+    }
+
+    @Benchmark
+    public TCChromosome crossover() {
+        return father.crossover(mother, offset);
+    }
+
+    @Benchmark
+    public TCChromosome mutate(SuiteState suite) {
+        return father.mutate(suite.cases, suite.rng);
+    }
+
+    @Benchmark
+    public List<TCChromosome> getNeighbours(SuiteState suite) {
+        return father.getNeighbours(suite.cases, 10);
+    }
+
+    @Benchmark
+    public TCChromosome getBestNeighbour(SuiteState suite) {
+        // A fresh chromosome each time, so the cost of building its
+        // detections is included.
+        return new TCChromosome(suite.cases, father.getGenes()).getBestNeighbour(suite.cases, 10);
+    }
+
+    @Benchmark
+    public TCChromosome generateChromosome(SuiteState suite) {
+        return TCChromosome.generateChromosome(suite.setSize, suite.cases, suite.rng);
+    }
+}
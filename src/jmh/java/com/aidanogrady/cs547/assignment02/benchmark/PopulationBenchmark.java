@@ -0,0 +1,76 @@
+package com.aidanogrady.cs547.assignment02.benchmark;
+
+import com.aidanogrady.cs547.assignment02.model.Rng;
+import com.aidanogrady.cs547.assignment02.model.TCPopulation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks evolving a population by one generation, using the genetic
+ * algorithm settings of the bundled configurations.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PopulationBenchmark {
+    /**
+     * The size of the population.
+     */
+    @Param({"1000"})
+    public int population;
+
+    /**
+     * The number of threads generations are bred on.
+     */
+    @Param({"1"})
+    public int threads;
+
+    /**
+     * The population being evolved.
+     */
+    private TCPopulation tcPopulation;
+
+    @Setup(Level.Iteration)
+    public void setUp(SuiteState suite) {
+        Properties props = new Properties();
+        props.setProperty("size", Integer.toString(suite.setSize));
+        props.setProperty("ga.population", Integer.toString(population));
+        props.setProperty("ga.elitism", "0.2");
+        props.setProperty("ga.crossover", "0.99");
+        props.setProperty("ga.mutation", "0.1");
+        props.setProperty("ga.tournament", "16");
+        props.setProperty("ga.threads", Integer.toString(threads));
+        tcPopulation = new TCPopulation(props, suite.cases, new Rng(547));
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        tcPopulation.shutdown();
+    }
+
+    @Benchmark
+    public TCPopulation evolve() {
+        tcPopulation.evolve();
+        return tcPopulation;
+    }
+}
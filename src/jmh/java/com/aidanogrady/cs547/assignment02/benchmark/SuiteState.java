@@ -0,0 +1,60 @@
+package com.aidanogrady.cs547.assignment02.benchmark;
+
+import com.aidanogrady.cs547.assignment02.Application;
+import com.aidanogrady.cs547.assignment02.model.Rng;
+import com.aidanogrady.cs547.assignment02.model.TestCase;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * The test suite benchmarks are run over, loaded once per trial from one of
+ * the bundled fault matrices. Benchmarks must be run from the project root so
+ * the data directory can be found.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+@State(Scope.Benchmark)
+public class SuiteState {
+    /**
+     * The fault matrix to load.
+     */
+    @Param({"data/nanoxmltestfaultmatrix.txt", "data/fault-matrix-1000.dat"})
+    public String dataset;
+
+    /**
+     * The number of tests in each chromosome. This is capped at one less than
+     * the number of distinct tests in the suite, as mutation needs a test from
+     * outside the chromosome.
+     */
+    @Param({"5", "15", "50"})
+    public int size;
+
+    /**
+     * The test cases of the suite.
+     */
+    public List<TestCase> cases;
+
+    /**
+     * The size of chromosomes after capping.
+     */
+    public int setSize;
+
+    /**
+     * The random stream benchmarks draw from.
+     */
+    public Rng rng;
+
+    @Setup
+    public void setUp() {
+        cases = Application.readTestCasesFromFile(dataset);
+        if (cases == null)
+            throw new IllegalStateException(dataset + " cannot be read");
+        setSize = Math.min(size, cases.size() - 1);
+        rng = new Rng(547);
+    }
+}
@@ -1,23 +1,29 @@
 package com.aidanogrady.cs547.assignment02;
 
-import com.aidanogrady.cs547.assignment02.model.TCChromosome;
+import com.aidanogrady.cs547.assignment02.batch.BatchRunner;
+import com.aidanogrady.cs547.assignment02.io.BinaryFaultMatrix;
+import com.aidanogrady.cs547.assignment02.io.FaultMatrixReader;
+import com.aidanogrady.cs547.assignment02.model.FaultMatrix;
+import com.aidanogrady.cs547.assignment02.model.SuiteReduction;
 import com.aidanogrady.cs547.assignment02.model.TestCase;
 import com.aidanogrady.cs547.assignment02.search.GeneticAlgorithmSearch;
 import com.aidanogrady.cs547.assignment02.search.HillClimbingSearch;
 import com.aidanogrady.cs547.assignment02.search.RandomSearch;
 import com.aidanogrady.cs547.assignment02.search.Search;
+import com.aidanogrady.cs547.assignment02.search.Sweep;
+import com.aidanogrady.cs547.assignment02.server.PrioritisationServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.lang.reflect.Array;
-import java.nio.charset.Charset;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Main application class for the system.
@@ -33,7 +39,15 @@ public class Application {
         System.out.println("Author: Aidan O'Grady (201218150)");
         System.out.println();
 
-        if (args.length < 2) {
+        if (args.length == 3 && args[0].equals("convert")) {
+            convert(args[1], args[2]);
+        } else if ((args.length == 2 || args.length == 3) && args[0].equals("batch")) {
+            batch(args[1], args.length == 3 ? args[2] : null);
+        } else if ((args.length == 3 || args.length == 4) && args[0].equals("sweep")) {
+            sweep(args[1], args[2], args.length == 4 ? args[3] : null);
+        } else if (args.length >= 3 && args[0].equals("serve")) {
+            serve(args[1], Arrays.copyOfRange(args, 2, args.length));
+        } else if (args.length < 2) {
             System.out.println("Please provide a .properties file & data file");
         } else {
             Properties properties = new Properties();
@@ -47,6 +61,12 @@ public class Application {
             if (validateProperties(properties) && cases != null) {
                 System.out.println("Properties are valid, let's go!");
                 System.out.println("No. of test cases: " + cases.size() + ".");
+                if (Boolean.parseBoolean(properties.getProperty("reduce", "true"))) {
+                    int size = Integer.parseInt(properties.getProperty("size"));
+                    SuiteReduction reduction = SuiteReduction.reduce(cases, size);
+                    System.out.println(reduction);
+                    cases = reduction.getTestCases();
+                }
 
                 Search[] searches = new Search[3];
                 searches[0] = new RandomSearch();
@@ -66,38 +86,152 @@ public class Application {
      * @param filePath the file to read test cases from.
      * @return list of test cases from file if valid, otherwise null
      */
-    private static List<TestCase> readTestCasesFromFile(String filePath) {
-        // Set is being used to ensure that duplicate test cases are not added
-        // to the list, making searching easier.
-        Set<TestCase> set = new HashSet<>();
-
-        String content;
+    public static List<TestCase> readTestCasesFromFile(String filePath) {
         try {
-            byte[] encoded = Files.readAllBytes(Paths.get(filePath));
-            content = new String(encoded, Charset.defaultCharset());
+            Path path = Paths.get(filePath);
+            if (BinaryFaultMatrix.isBinary(path))
+                return BinaryFaultMatrix.read(path).getTestCases();
+            return FaultMatrixReader.read(path);
         } catch (IOException e) {
+            System.out.println(filePath + " cannot be parsed: " + e.getMessage());
             return null;
         }
+    }
 
-        // Lovely regex to split file into each test case.
-        String regex = "unitest[\\d+]+:\\s[v\\d+:\\s\\d]+";
-        Pattern pattern = Pattern.compile(regex);
-        Matcher matcher = pattern.matcher(content);
-        while (matcher.find()) {
-            // Compress whitespace and remove colons to allow easy manipulation.
-            String string = matcher.group();
-            string = string.replaceAll("\\s+"," ").replaceAll(":", "");
-            String[] nextCase = string.split(" ");
-
-            List<Integer> faults = new ArrayList<>();
-            int length = (nextCase.length - 1) / 2;
-            for (int i = 0; i < length; i++) {
-                if (Integer.parseInt(nextCase[(i + 1) * 2]) > 0)
-                    faults.add(i + 1);
+    /**
+     * Converts the given text fault matrix to the binary format, so that it
+     * can be loaded without being parsed.
+     *
+     * @param input the text fault matrix to read
+     * @param output the file to write the binary fault matrix to
+     */
+    private static void convert(String input, String output) {
+        try {
+            FaultMatrix matrix = FaultMatrixReader.readMatrix(Paths.get(input));
+            BinaryFaultMatrix.write(matrix, Paths.get(output));
+            System.out.println("Converted " + matrix.getTestNames().length + " tests ("
+                    + matrix.getTestCases().size() + " distinct) with "
+                    + matrix.getNumOfFaults() + " faults to " + output);
+        } catch (IOException e) {
+            System.out.println(input + " cannot be converted: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs every job of the given manifest concurrently, writing the result
+     * of each as it finishes.
+     *
+     * @param manifest the manifest of jobs to run
+     * @param output the file to write results to, or null for the console
+     */
+    private static void batch(String manifest, String output) {
+        BatchRunner runner;
+        try {
+            runner = new BatchRunner(Paths.get(manifest));
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println(manifest + " cannot be read: " + e.getMessage());
+            return;
+        }
+
+        long wallTime = System.currentTimeMillis();
+        if (output == null) {
+            runner.run(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        } else {
+            try (Writer results = Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8)) {
+                runner.run(results);
+            } catch (IOException e) {
+                System.out.println(output + " cannot be written: " + e.getMessage());
+                return;
             }
-            set.add(new TestCase(nextCase[0], faults, length));
         }
-        return new ArrayList<>(set);
+        wallTime = System.currentTimeMillis() - wallTime;
+
+        System.out.println("Ran " + runner.getJobs() + " jobs (" + runner.getFailed() + " failed) in "
+                + wallTime + "ms; the longest took " + runner.getLongest() + "ms and all together "
+                + runner.getTotal() + "ms.");
+    }
+
+    /**
+     * Sweeps the values of the properties given by the sweep.* properties,
+     * printing a table of the combinations tried ranked by fitness.
+     *
+     * @param propertiesFile the properties of the sweep
+     * @param dataFile the fault matrix to search
+     * @param output the file to write the table to as well, or null
+     */
+    private static void sweep(String propertiesFile, String dataFile, String output) {
+        Properties properties = new Properties();
+        try {
+            properties.load(new FileInputStream(propertiesFile));
+        } catch (IOException e) {
+            System.out.println(propertiesFile + " cannot be parsed.");
+            return;
+        }
+        List<TestCase> cases = readTestCasesFromFile(dataFile);
+        if (!validateProperties(properties) || cases == null)
+            return;
+
+        String table;
+        try {
+            Sweep sweep = new Sweep(properties);
+            long wallTime = System.currentTimeMillis();
+            table = Sweep.table(sweep.run(sweep.getSearch(), cases));
+            wallTime = System.currentTimeMillis() - wallTime;
+            System.out.print(table);
+            System.out.println("Swept in " + wallTime + "ms.");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Sweep cannot be run: " + e.getMessage());
+            return;
+        }
+
+        if (output != null) {
+            try {
+                Files.write(Paths.get(output), table.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                System.out.println(output + " cannot be written: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Loads the given fault matrices and serves prioritisation requests for
+     * them until the JVM is stopped. Each dataset is named by its file name,
+     * without extension.
+     *
+     * @param propertiesFile the properties of the searches
+     * @param dataFiles the fault matrices to serve
+     */
+    private static void serve(String propertiesFile, String[] dataFiles) {
+        Properties properties = new Properties();
+        try {
+            properties.load(new FileInputStream(propertiesFile));
+        } catch (IOException e) {
+            System.out.println(propertiesFile + " cannot be parsed.");
+            return;
+        }
+        if (!validateProperties(properties))
+            return;
+
+        Map<String, List<TestCase>> datasets = new LinkedHashMap<>();
+        for (String dataFile : dataFiles) {
+            List<TestCase> cases = readTestCasesFromFile(dataFile);
+            if (cases == null)
+                return;
+            String name = Paths.get(dataFile).getFileName().toString();
+            if (name.lastIndexOf('.') > 0)
+                name = name.substring(0, name.lastIndexOf('.'));
+            datasets.put(name, cases);
+            System.out.println("Loaded " + name + ": " + cases.size() + " test cases.");
+        }
+
+        try {
+            PrioritisationServer server = new PrioritisationServer(properties, datasets);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "server-stop"));
+            System.out.println("Serving on http://127.0.0.1:" + server.getPort() + "/prioritise");
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Server cannot be started: " + e.getMessage());
+        }
     }
 
     /**
@@ -0,0 +1,312 @@
+package com.aidanogrady.cs547.assignment02.batch;
+
+import com.aidanogrady.cs547.assignment02.io.BinaryFaultMatrix;
+import com.aidanogrady.cs547.assignment02.io.FaultMatrixReader;
+import com.aidanogrady.cs547.assignment02.model.Rng;
+import com.aidanogrady.cs547.assignment02.model.SuiteReduction;
+import com.aidanogrady.cs547.assignment02.model.TestCase;
+import com.aidanogrady.cs547.assignment02.search.Result;
+import com.aidanogrady.cs547.assignment02.search.Search;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the prioritisation jobs listed in a manifest concurrently. Each line of
+ * the manifest gives a dataset, a properties file and a comma separated list
+ * of algorithms (random, hillclimb or ga), with paths relative to the
+ * manifest, and blank lines and lines starting with # ignored:
+ *
+ * <pre>
+ *   data/fault-matrix-1000.dat  nightly.properties  ga,hillclimb
+ * </pre>
+ *
+ * Every algorithm of every line is a job of its own, searched once. Each
+ * distinct dataset and properties file is loaded only once, however many jobs
+ * share it, and a dataset's jobs start as soon as it has loaded. Jobs run on a
+ * work-stealing pool with a thread per processor, and each job's result is
+ * written the moment it finishes, so the batch takes about as long as its
+ * longest job when there are processors enough.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+public class BatchRunner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchRunner.class);
+
+    /**
+     * The jobs of the manifest, in order.
+     */
+    private final List<Job> jobs = new ArrayList<>();
+
+    /**
+     * The searches by algorithm name, shared by every job.
+     */
+    private final Map<String, Search> searches = Search.byName();
+
+    /**
+     * The reduced suites by dataset and size, reduced on first use.
+     */
+    private final Map<String, List<TestCase>> reduced = new ConcurrentHashMap<>();
+
+    /**
+     * The number of jobs that failed in the last run.
+     */
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * The time taken by the longest job of the last run, in milliseconds.
+     */
+    private final AtomicLong longest = new AtomicLong();
+
+    /**
+     * The time taken by all jobs of the last run, in milliseconds.
+     */
+    private final LongAdder total = new LongAdder();
+
+    /**
+     * Constructor, reading the manifest and the properties files it names.
+     *
+     * @param manifest the manifest to read
+     * @throws IOException if the manifest or a properties file cannot be read
+     * @throws IllegalArgumentException if a line of the manifest is invalid
+     */
+    public BatchRunner(Path manifest) throws IOException {
+        Path base = manifest.toAbsolutePath().getParent();
+        Map<Path, Properties> configs = new HashMap<>();
+        List<String> lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            String[] fields = line.split("\\s+");
+            if (fields.length != 3)
+                throw new IllegalArgumentException("line " + (i + 1)
+                        + ": expected a dataset, properties file and algorithms");
+
+            Path config = base.resolve(fields[1]).normalize();
+            Properties props = configs.get(config);
+            if (props == null) {
+                props = new Properties();
+                try (InputStream in = Files.newInputStream(config)) {
+                    props.load(in);
+                }
+                // Jobs sharing a seed would share a checkpoint.
+                if (props.getProperty("ga.checkpoint") != null)
+                    throw new IllegalArgumentException("line " + (i + 1)
+                            + ": ga.checkpoint cannot be used in a batch");
+                configs.put(config, props);
+            }
+
+            for (String algorithm : fields[2].split(",")) {
+                if (!searches.containsKey(algorithm))
+                    throw new IllegalArgumentException("line " + (i + 1)
+                            + ": unknown algorithm " + algorithm);
+                jobs.add(new Job(base.resolve(fields[0]).normalize(), fields[0], fields[1],
+                        props, algorithm));
+            }
+        }
+    }
+
+    /**
+     * Runs every job, writing a line for each to the given writer as it
+     * finishes, and waits for them all.
+     *
+     * @param results where to write the result of each job
+     */
+    public void run(Writer results) {
+        failed.reset();
+        longest.set(0);
+        total.reset();
+
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            Map<Path, CompletableFuture<List<TestCase>>> matrices = new HashMap<>();
+            List<CompletableFuture<Void>> finished = new ArrayList<>();
+            for (Job job : jobs) {
+                CompletableFuture<List<TestCase>> matrix = matrices.computeIfAbsent(job.dataset,
+                        path -> CompletableFuture.supplyAsync(() -> load(path), pool));
+                finished.add(matrix
+                        .thenApplyAsync(cases -> run(job, cases), pool)
+                        .handle((line, e) -> {
+                            if (e != null) {
+                                failed.increment();
+                                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                                LOGGER.error(job + " failed", cause);
+                                line = job + " failed: " + cause.getMessage();
+                            }
+                            write(results, line);
+                            return null;
+                        }));
+            }
+            CompletableFuture.allOf(finished.toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs a single job.
+     *
+     * @param job the job to run
+     * @param cases the test cases of its dataset
+     * @return the line reporting its result
+     */
+    private String run(Job job, List<TestCase> cases) {
+        Properties props = job.props;
+        if (Boolean.parseBoolean(props.getProperty("reduce", "true"))) {
+            int size = Integer.parseInt(props.getProperty("size"));
+            List<TestCase> all = cases;
+            cases = reduced.computeIfAbsent(job.dataset + "#" + size,
+                    k -> SuiteReduction.reduce(all, size).getTestCases());
+        }
+
+        long time = System.currentTimeMillis();
+        Result result = searches.get(job.algorithm).search(props, cases, Rng.fromProperties(props));
+        time = System.currentTimeMillis() - time;
+
+        longest.accumulateAndGet(time, Math::max);
+        total.add(time);
+        return job + " " + result.getResult().getFitness() + " in " + time + "ms: "
+                + result.getResult().getCandidate();
+    }
+
+    /**
+     * Loads the test cases of a dataset.
+     *
+     * @param path the dataset to load
+     * @return test cases
+     */
+    private static List<TestCase> load(Path path) {
+        try {
+            if (BinaryFaultMatrix.isBinary(path))
+                return BinaryFaultMatrix.read(path).getTestCases();
+            return FaultMatrixReader.read(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(path + " cannot be parsed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes a line of the results, as soon as it is known.
+     *
+     * @param results where to write
+     * @param line the line to write
+     */
+    private static void write(Writer results, String line) {
+        synchronized (results) {
+            try {
+                results.write(line);
+                results.write(System.lineSeparator());
+                results.flush();
+            } catch (IOException e) {
+                LOGGER.error("Could not write result: " + line, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of jobs in the manifest.
+     *
+     * @return jobs
+     */
+    public int getJobs() {
+        return jobs.size();
+    }
+
+    /**
+     * Returns the number of jobs that failed in the last run.
+     *
+     * @return failed jobs
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * Returns the time taken by the longest job of the last run.
+     *
+     * @return milliseconds
+     */
+    public long getLongest() {
+        return longest.get();
+    }
+
+    /**
+     * Returns the time taken by all jobs of the last run, added together.
+     *
+     * @return milliseconds
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * A search of a dataset with an algorithm and properties.
+     */
+    private static final class Job {
+        /**
+         * The dataset to search.
+         */
+        final Path dataset;
+
+        /**
+         * The dataset as given in the manifest.
+         */
+        final String datasetName;
+
+        /**
+         * The properties file as given in the manifest.
+         */
+        final String configName;
+
+        /**
+         * The properties of the search.
+         */
+        final Properties props;
+
+        /**
+         * The name of the algorithm to search with.
+         */
+        final String algorithm;
+
+        /**
+         * Constructor.
+         *
+         * @param dataset the dataset to search
+         * @param datasetName the dataset as given in the manifest
+         * @param configName the properties file as given in the manifest
+         * @param props the properties of the search
+         * @param algorithm the name of the algorithm to search with
+         */
+        Job(Path dataset, String datasetName, String configName, Properties props, String algorithm) {
+            this.dataset = dataset;
+            this.datasetName = datasetName;
+            this.configName = configName;
+            this.props = props;
+            this.algorithm = algorithm;
+        }
+
+        @Override
+        public String toString() {
+            return datasetName + " " + configName + " " + algorithm;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.aidanogrady.cs547.assignment02.io;
+
+import com.aidanogrady.cs547.assignment02.model.APFD;
+import com.aidanogrady.cs547.assignment02.model.FaultMatrix;
+import com.aidanogrady.cs547.assignment02.model.TestCase;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes fault matrices in a compact, versioned binary format, so
+ * that a matrix can be parsed once and then loaded in milliseconds. All values
+ * are little endian, laid out as follows:
+ *
+ * <pre>
+ *   magic     4 bytes  "TCFM"
+ *   version   int      1
+ *   faults    int      number of faults
+ *   words     int      longs per fault matrix row
+ *   distinct  int      number of distinct tests
+ *   tests     int      number of tests, including duplicates
+ *   rows      long[distinct * words]  fault matrix row of each distinct test
+ *   mapping   int[tests]              distinct test of each test
+ *   names     tests * (unsigned short length, UTF-8 bytes)
+ * </pre>
+ *
+ * The rows start 8 byte aligned, and are read through a view of the mapped
+ * file straight into each test's row.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+public final class BinaryFaultMatrix {
+    /**
+     * The bytes every binary fault matrix starts with.
+     */
+    private static final byte[] MAGIC = {'T', 'C', 'F', 'M'};
+
+    /**
+     * The version of the format written.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The length of the header in bytes.
+     */
+    private static final int HEADER = 24;
+
+    /**
+     * Not to be instantiated.
+     */
+    private BinaryFaultMatrix() {
+    }
+
+    /**
+     * Returns whether the given file starts with the binary format's magic
+     * bytes.
+     *
+     * @param path the file to check
+     * @return true if the file is a binary fault matrix
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isBinary(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+            while (magic.hasRemaining() && channel.read(magic) >= 0)
+                ;
+            magic.flip();
+            return magic.remaining() == MAGIC.length && magic.equals(ByteBuffer.wrap(MAGIC));
+        }
+    }
+
+    /**
+     * Reads the binary fault matrix in the given file.
+     *
+     * @param path the file to read
+     * @return fault matrix
+     * @throws FaultMatrixFormatException if the file is not a valid binary
+     * fault matrix
+     * @throws IOException if the file cannot be read
+     */
+    public static FaultMatrix read(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!ByteBuffer.wrap(magic).equals(ByteBuffer.wrap(MAGIC)))
+                throw error("not a binary fault matrix", 0);
+            int version = buffer.getInt();
+            if (version != VERSION)
+                throw error("unsupported version " + version, 4);
+
+            int faults = buffer.getInt();
+            int words = buffer.getInt();
+            int distinct = buffer.getInt();
+            int tests = buffer.getInt();
+            if (faults < 0 || words != APFD.words(faults) || distinct < 1 || tests < distinct)
+                throw error("invalid header", 8);
+
+            LongBuffer rows = buffer.asLongBuffer();
+            List<TestCase> testCases = new ArrayList<>(distinct);
+            long[][] faultRows = new long[distinct][words];
+            for (long[] row : faultRows)
+                rows.get(row);
+            buffer.position(HEADER + distinct * words * 8);
+
+            int[] mapping = new int[tests];
+            for (int i = 0; i < tests; i++) {
+                mapping[i] = buffer.getInt();
+                if (mapping[i] < 0 || mapping[i] >= distinct)
+                    throw error("invalid distinct test " + mapping[i], buffer.position() - 4);
+            }
+
+            String[] names = new String[tests];
+            byte[] bytes = new byte[256];
+            for (int i = 0; i < tests; i++) {
+                int length = buffer.getShort() & 0xffff;
+                if (bytes.length < length)
+                    bytes = new byte[length];
+                buffer.get(bytes, 0, length);
+                names[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+
+            // The first test mapped to each distinct test names it.
+            String[] distinctNames = new String[distinct];
+            for (int i = tests - 1; i >= 0; i--)
+                distinctNames[mapping[i]] = names[i];
+            for (int i = 0; i < distinct; i++)
+                testCases.add(new TestCase(distinctNames[i], faultRows[i], faults));
+            return new FaultMatrix(testCases, faults, names, mapping);
+        } catch (BufferUnderflowException e) {
+            throw error("unexpected end of file", buffer.position());
+        }
+    }
+
+    /**
+     * Writes the given fault matrix to the given file in the binary format.
+     * The file is written in full before being moved into place, so a reader
+     * never sees a partial matrix.
+     *
+     * @param matrix the fault matrix to write
+     * @param path the file to write to
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(FaultMatrix matrix, Path path) throws IOException {
+        List<TestCase> testCases = matrix.getTestCases();
+        String[] names = matrix.getTestNames();
+        int words = APFD.words(matrix.getNumOfFaults());
+
+        byte[][] encoded = new byte[names.length][];
+        int namesLength = 0;
+        for (int i = 0; i < names.length; i++) {
+            encoded[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            if (encoded[i].length > 0xffff)
+                throw new IOException("test name too long: " + names[i]);
+            namesLength += 2 + encoded[i].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer
+                .allocate(HEADER + testCases.size() * words * 8 + names.length * 4 + namesLength)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(matrix.getNumOfFaults());
+        buffer.putInt(words);
+        buffer.putInt(testCases.size());
+        buffer.putInt(names.length);
+        for (TestCase test : testCases) {
+            for (long word : test.getFaultRow())
+                buffer.putLong(word);
+        }
+        for (int index : matrix.getDistinct())
+            buffer.putInt(index);
+        for (byte[] name : encoded) {
+            buffer.putShort((short) name.length);
+            buffer.put(name);
+        }
+        buffer.flip();
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+                channel.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Returns an error at the given offset of a binary fault matrix. Offsets
+     * are reported as the column of the first line.
+     *
+     * @param message what is wrong
+     * @param offset the offset of the problem
+     * @return error
+     */
+    private static FaultMatrixFormatException error(String message, int offset) {
+        return new FaultMatrixFormatException(message + " at byte " + offset, 1, offset + 1);
+    }
+}
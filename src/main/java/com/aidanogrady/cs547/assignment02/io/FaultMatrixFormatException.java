@@ -0,0 +1,53 @@
+package com.aidanogrady.cs547.assignment02.io;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a fault matrix file is not in the expected format, giving the
+ * line and column at which the problem was found.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+public class FaultMatrixFormatException extends IOException {
+    /**
+     * The line of the problem, starting from 1.
+     */
+    private final int line;
+
+    /**
+     * The column of the problem, starting from 1.
+     */
+    private final int column;
+
+    /**
+     * Constructor.
+     *
+     * @param message what is wrong
+     * @param line the line of the problem
+     * @param column the column of the problem
+     */
+    public FaultMatrixFormatException(String message, int line, int column) {
+        super(line + ":" + column + ": " + message);
+        this.line = line;
+        this.column = column;
+    }
+
+    /**
+     * Returns the line of the problem.
+     *
+     * @return line
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Returns the column of the problem.
+     *
+     * @return column
+     */
+    public int getColumn() {
+        return column;
+    }
+}
@@ -0,0 +1,337 @@
+package com.aidanogrady.cs547.assignment02.io;
+
+import com.aidanogrady.cs547.assignment02.model.APFD;
+import com.aidanogrady.cs547.assignment02.model.FaultMatrix;
+import com.aidanogrady.cs547.assignment02.model.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a fault matrix in a single pass over the file. The file is a sequence
+ * of whitespace separated tokens: a "unitestN:" label starts each test, and is
+ * followed by a "vK:" label and value for each fault, where a value above 0
+ * means the test detects the fault. Faults are numbered in the order they
+ * appear within each test.
+ *
+ * Tokens are read straight from a buffered channel into each test's fault
+ * matrix row, so the file is never held in memory as a whole and load time
+ * grows linearly with its size.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+public class FaultMatrixReader {
+    /**
+     * The number of bytes read from the file at a time.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The label starting each test.
+     */
+    private static final byte[] TEST_LABEL = "unitest".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Distinct tests read so far. Duplicate test cases are not added, making
+     * searching easier.
+     */
+    private final List<TestCase> tests = new ArrayList<>();
+
+    /**
+     * The index of each distinct test.
+     */
+    private final Map<TestCase, Integer> indices = new HashMap<>();
+
+    /**
+     * The names of every test read so far.
+     */
+    private final List<String> testNames = new ArrayList<>();
+
+    /**
+     * The index of the distinct test of every test read so far.
+     */
+    private int[] distinct = new int[64];
+
+    /**
+     * The token being read.
+     */
+    private byte[] token = new byte[64];
+
+    /**
+     * The length of the token being read.
+     */
+    private int tokenLength;
+
+    /**
+     * The line of the next byte, starting from 1.
+     */
+    private int line = 1;
+
+    /**
+     * The column of the next byte, starting from 1.
+     */
+    private int column = 1;
+
+    /**
+     * The line of the token being read, starting from 1.
+     */
+    private int tokenLine;
+
+    /**
+     * The column of the token being read, starting from 1.
+     */
+    private int tokenColumn;
+
+    /**
+     * The name of the test being read, or null before the first test.
+     */
+    private String testName;
+
+    /**
+     * The line of the label of the test being read, starting from 1.
+     */
+    private int testLine;
+
+    /**
+     * The column of the label of the test being read, starting from 1.
+     */
+    private int testColumn;
+
+    /**
+     * The row of the fault matrix of the test being read.
+     */
+    private long[] row = new long[1];
+
+    /**
+     * The number of faults read for the test being read.
+     */
+    private int faults;
+
+    /**
+     * The number of faults every test must have, or -1 before the first test
+     * is complete.
+     */
+    private int numOfFaults = -1;
+
+    /**
+     * Whether a fault label has been read without its value.
+     */
+    private boolean expectingValue;
+
+    /**
+     * Not to be instantiated outside of read.
+     */
+    private FaultMatrixReader() {
+    }
+
+    /**
+     * Reads the distinct test cases of the fault matrix in the given file, in
+     * the order they first appear.
+     *
+     * @param path the file to read
+     * @return distinct test cases
+     * @throws FaultMatrixFormatException if the file is not a fault matrix
+     * @throws IOException if the file cannot be read
+     */
+    public static List<TestCase> read(Path path) throws IOException {
+        return readMatrix(path).getTestCases();
+    }
+
+    /**
+     * Reads the fault matrix in the given file, keeping track of which tests
+     * are duplicates.
+     *
+     * @param path the file to read
+     * @return fault matrix
+     * @throws FaultMatrixFormatException if the file is not a fault matrix
+     * @throws IOException if the file cannot be read
+     */
+    public static FaultMatrix readMatrix(Path path) throws IOException {
+        FaultMatrixReader reader = new FaultMatrixReader();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                reader.accept(buffer);
+                buffer.clear();
+            }
+        }
+        return reader.finish();
+    }
+
+    /**
+     * Tokenizes the bytes remaining in the buffer.
+     *
+     * @param buffer the bytes to read
+     * @throws FaultMatrixFormatException if a token is not as expected
+     */
+    private void accept(ByteBuffer buffer) throws FaultMatrixFormatException {
+        byte[] bytes = buffer.array();
+        int end = buffer.limit();
+        for (int i = buffer.position(); i < end; i++) {
+            byte b = bytes[i];
+            if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                if (tokenLength > 0)
+                    endToken();
+                if (b == '\n') {
+                    line++;
+                    column = 1;
+                } else {
+                    column++;
+                }
+                continue;
+            }
+
+            if (tokenLength == 0) {
+                tokenLine = line;
+                tokenColumn = column;
+            } else if (tokenLength == token.length) {
+                token = Arrays.copyOf(token, token.length * 2);
+            }
+            token[tokenLength++] = b;
+            column++;
+        }
+    }
+
+    /**
+     * Ends the file, completing the last test.
+     *
+     * @return fault matrix
+     * @throws FaultMatrixFormatException if the file ends unexpectedly
+     */
+    private FaultMatrix finish() throws FaultMatrixFormatException {
+        if (tokenLength > 0)
+            endToken();
+        endTest();
+        if (tests.isEmpty())
+            throw new FaultMatrixFormatException("no tests found", line, column);
+        return new FaultMatrix(tests, numOfFaults, testNames.toArray(new String[0]),
+                Arrays.copyOf(distinct, testNames.size()));
+    }
+
+    /**
+     * Handles the token that has been read.
+     *
+     * @throws FaultMatrixFormatException if the token is not as expected
+     */
+    private void endToken() throws FaultMatrixFormatException {
+        int length = tokenLength;
+        tokenLength = 0;
+
+        if (token[length - 1] == ':') {
+            if (startsWith(TEST_LABEL, length)) {
+                if (expectingValue)
+                    throw error("expected a value, found a test label");
+                endTest();
+                testName = new String(token, 0, length - 1, StandardCharsets.US_ASCII);
+                testLine = tokenLine;
+                testColumn = tokenColumn;
+            } else if (token[0] == 'v') {
+                if (testName == null)
+                    throw error("fault label before the first test");
+                if (expectingValue)
+                    throw error("expected a value, found another fault label");
+                expectingValue = true;
+            } else {
+                throw error("unknown label '" + text(length) + "'");
+            }
+            return;
+        }
+
+        if (!expectingValue)
+            throw error("expected a label, found '" + text(length) + "'");
+        boolean detected = false;
+        for (int i = 0; i < length; i++) {
+            byte b = token[i];
+            if (b < '0' || b > '9')
+                throw error("expected a value, found '" + text(length) + "'");
+            detected |= b != '0';
+        }
+
+        int word = faults >>> 6;
+        if (word == row.length)
+            row = Arrays.copyOf(row, row.length * 2);
+        if (detected)
+            row[word] |= 1L << faults;
+        faults++;
+        expectingValue = false;
+    }
+
+    /**
+     * Completes the test being read, if any.
+     *
+     * @throws FaultMatrixFormatException if the test is incomplete
+     */
+    private void endTest() throws FaultMatrixFormatException {
+        if (testName == null)
+            return;
+        if (expectingValue)
+            throw error("expected a value, found the end of the file");
+        if (numOfFaults < 0)
+            numOfFaults = faults;
+        else if (faults != numOfFaults)
+            throw new FaultMatrixFormatException(testName + " has " + faults
+                    + " faults, expected " + numOfFaults, testLine, testColumn);
+
+        TestCase test = new TestCase(testName, Arrays.copyOf(row, APFD.words(faults)), faults);
+        Integer index = indices.get(test);
+        if (index == null) {
+            index = tests.size();
+            indices.put(test, index);
+            tests.add(test);
+        }
+        if (testNames.size() == distinct.length)
+            distinct = Arrays.copyOf(distinct, distinct.length * 2);
+        distinct[testNames.size()] = index;
+        testNames.add(testName);
+        Arrays.fill(row, 0L);
+        faults = 0;
+    }
+
+    /**
+     * Returns whether the token starts with the given bytes.
+     *
+     * @param prefix the bytes to check for
+     * @param length the length of the token
+     * @return true if the token starts with prefix
+     */
+    private boolean startsWith(byte[] prefix, int length) {
+        if (length <= prefix.length)
+            return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (token[i] != prefix[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the token as text, for error messages.
+     *
+     * @param length the length of the token
+     * @return token
+     */
+    private String text(int length) {
+        return new String(token, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns an error at the position of the current token.
+     *
+     * @param message what is wrong
+     * @return error
+     */
+    private FaultMatrixFormatException error(String message) {
+        return new FaultMatrixFormatException(message, tokenLine, tokenColumn);
+    }
+}
@@ -0,0 +1,157 @@
+package com.aidanogrady.cs547.assignment02.io;
+
+import com.aidanogrady.cs547.assignment02.model.PopulationSnapshot;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes snapshots of genetic algorithm populations in a compact,
+ * versioned binary format, so that a long search can be resumed where it was
+ * checkpointed. All values are little endian, laid out as follows:
+ *
+ * <pre>
+ *   magic        4 bytes  "TCGA"
+ *   version      int      1
+ *   tests        int      number of tests in the suite
+ *   suite        int      fingerprint of the suite
+ *   population   int      number of chromosomes
+ *   size         int      tests per chromosome
+ *   generations  int      generations gone through
+ *   stalls       int      generations stalled for
+ *   evaluations  long     evaluations performed
+ *   seed         long     state of the random stream
+ *   gamma        long     increment of the random stream
+ *   fitness      double[population]         fitness of each chromosome
+ *   genes        int[population * size]     test indices of each chromosome
+ * </pre>
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+public final class PopulationCheckpoint {
+    /**
+     * The bytes every checkpoint starts with.
+     */
+    private static final byte[] MAGIC = {'T', 'C', 'G', 'A'};
+
+    /**
+     * The version of the format written.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The length of the header in bytes.
+     */
+    private static final int HEADER = 56;
+
+    /**
+     * Not to be instantiated.
+     */
+    private PopulationCheckpoint() {
+    }
+
+    /**
+     * Reads the checkpoint in the given file.
+     *
+     * @param path the file to read
+     * @return snapshot of the population
+     * @throws IOException if the file cannot be read, or is not a valid
+     * checkpoint
+     */
+    public static PopulationSnapshot read(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!ByteBuffer.wrap(magic).equals(ByteBuffer.wrap(MAGIC)))
+                throw new IOException(path + " is not a checkpoint");
+            int version = buffer.getInt();
+            if (version != VERSION)
+                throw new IOException(path + " has unsupported version " + version);
+
+            int tests = buffer.getInt();
+            int suite = buffer.getInt();
+            int population = buffer.getInt();
+            int size = buffer.getInt();
+            int generations = buffer.getInt();
+            int stalls = buffer.getInt();
+            long evaluations = buffer.getLong();
+            long seed = buffer.getLong();
+            long gamma = buffer.getLong();
+            if (population < 1 || size < 1 || generations < 1 || stalls < 0
+                    || buffer.remaining() != population * (8L + size * 4L))
+                throw new IOException(path + " has an invalid header");
+
+            double[] fitness = new double[population];
+            DoubleBuffer fitnesses = buffer.asDoubleBuffer();
+            fitnesses.get(fitness);
+            buffer.position(HEADER + population * 8);
+
+            int[][] genes = new int[population][size];
+            IntBuffer indices = buffer.asIntBuffer();
+            for (int[] chromosome : genes)
+                indices.get(chromosome);
+            return new PopulationSnapshot(tests, suite, genes, fitness, seed, gamma, evaluations,
+                    generations, stalls);
+        } catch (BufferUnderflowException e) {
+            throw new IOException(path + " ends unexpectedly");
+        }
+    }
+
+    /**
+     * Writes the given snapshot to the given file. The file is written in
+     * full to a temporary file of its own before being moved into place, so a
+     * crash while writing leaves the previous checkpoint intact.
+     *
+     * @param snapshot the snapshot to write
+     * @param path the file to write to
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(PopulationSnapshot snapshot, Path path) throws IOException {
+        int population = snapshot.getSize();
+        int size = snapshot.getGenes(0).length;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER + population * (8 + size * 4))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(snapshot.getTests());
+        buffer.putInt(snapshot.getSuite());
+        buffer.putInt(population);
+        buffer.putInt(size);
+        buffer.putInt(snapshot.getGenerations());
+        buffer.putInt(snapshot.getStalls());
+        buffer.putLong(snapshot.getEvaluations());
+        buffer.putLong(snapshot.getSeed());
+        buffer.putLong(snapshot.getGamma());
+        for (int i = 0; i < population; i++)
+            buffer.putDouble(snapshot.getFitness(i));
+        for (int i = 0; i < population; i++) {
+            for (int gene : snapshot.getGenes(i))
+                buffer.putInt(gene);
+        }
+        buffer.flip();
+
+        Path dir = path.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(dir, path.getFileName() + ".", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+                channel.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
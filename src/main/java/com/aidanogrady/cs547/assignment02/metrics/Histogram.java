@@ -0,0 +1,150 @@
+package com.aidanogrady.cs547.assignment02.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative values, such as latencies in nanoseconds, that
+ * can be recorded from any number of threads without allocating or locking.
+ * As in HdrHistogram, values are counted in buckets whose width doubles with
+ * each power of two, with 64 buckets per power, so every value is placed
+ * within about 1.5% of its true value however large it is.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+public final class Histogram {
+    /**
+     * The number of bits of each value kept exactly.
+     */
+    private static final int SUB_BUCKET_BITS = 7;
+
+    /**
+     * The number of values below which each value has its own bucket.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The number of buckets for each power of two above SUB_BUCKETS.
+     */
+    private static final int HALF = SUB_BUCKETS / 2;
+
+    /**
+     * The number of buckets covering every non-negative long.
+     */
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * HALF;
+
+    /**
+     * The count of values in each bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * The number of values recorded.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * The sum of values recorded.
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * The largest value recorded.
+     */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     *
+     * @param value the value to record
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Returns the bucket the given value is counted in.
+     *
+     * @param value a non-negative value
+     * @return bucket
+     */
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    /**
+     * Returns the largest value counted in the given bucket.
+     *
+     * @param bucket the bucket
+     * @return highest value of the bucket
+     */
+    private static long highest(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int shift = (bucket - SUB_BUCKETS) / HALF + 1;
+        long sub = (bucket - SUB_BUCKETS) % HALF + HALF;
+        return (sub << shift) + (1L << shift) - 1;
+    }
+
+    /**
+     * Returns the number of values recorded.
+     *
+     * @return count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the mean of the values recorded.
+     *
+     * @return mean, or 0 if none have been recorded
+     */
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Returns the largest value recorded.
+     *
+     * @return max, or 0 if none have been recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the value the given percentage of recorded values are at or
+     * below, to within the precision of the buckets. Values recorded while
+     * this is worked out may or may not be included.
+     *
+     * @param percentile the percentage, from 0 to 100
+     * @return value at the percentile, or 0 if none have been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            total += counts.get(i);
+        if (total == 0)
+            return 0;
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target)
+                return Math.min(highest(i), getMax());
+        }
+        return getMax();
+    }
+}
@@ -0,0 +1,292 @@
+package com.aidanogrady.cs547.assignment02.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live metrics of a search, published as an MBean so that a run in progress
+ * can be watched in JConsole or VisualVM. Every run of the search records into
+ * the same metrics, from whichever thread performs it: counters are adders
+ * and latencies are histograms, so recording neither allocates nor locks.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+public class SearchMetrics implements SearchMetricsMBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SearchMetrics.class);
+
+    /**
+     * The JMX domain the metrics are published under.
+     */
+    private static final String DOMAIN = "com.aidanogrady.cs547.assignment02";
+
+    /**
+     * The number of fitness evaluations performed.
+     */
+    private final LongAdder evaluations = new LongAdder();
+
+    /**
+     * The number of searches started.
+     */
+    private final LongAdder runs = new LongAdder();
+
+    /**
+     * The time taken to evolve each generation, in nanoseconds.
+     */
+    private final Histogram evolveLatency = new Histogram();
+
+    /**
+     * The number of neighbours considered by each climb.
+     */
+    private final Histogram neighbourhoodSize = new Histogram();
+
+    /**
+     * The number of random restarts.
+     */
+    private final LongAdder restarts = new LongAdder();
+
+    /**
+     * The number of steps that did not improve the best.
+     */
+    private final LongAdder stalls = new LongAdder();
+
+    /**
+     * The fitness of the best chromosome most recently reported.
+     */
+    private volatile double bestFitness = Double.NaN;
+
+    /**
+     * The average fitness of the population most recently reported.
+     */
+    private volatile double averageFitness = Double.NaN;
+
+    /**
+     * The rate of evaluations.
+     */
+    private final Rate evaluationRate = new Rate();
+
+    /**
+     * The rate of generations.
+     */
+    private final Rate generationRate = new Rate();
+
+    /**
+     * The name the metrics are published under, or null if they are not.
+     */
+    private ObjectName name;
+
+    /**
+     * Creates metrics for a search and publishes them, named after the search
+     * and numbered if the name is taken. Metrics that cannot be published are
+     * still recorded.
+     *
+     * @param search the name of the search
+     * @return metrics
+     */
+    public static SearchMetrics register(String search) {
+        SearchMetrics metrics = new SearchMetrics();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (int i = 1; metrics.name == null; i++) {
+                ObjectName name = new ObjectName(DOMAIN + ":type=Search,name=" + search + (i > 1 ? "-" + i : ""));
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(metrics, name);
+                    metrics.name = name;
+                }
+            }
+        } catch (JMException e) {
+            LOGGER.warn("Metrics of " + search + " cannot be published: " + e.getMessage());
+        }
+        return metrics;
+    }
+
+    /**
+     * Records the start of a search.
+     */
+    public void runStarted() {
+        runs.increment();
+    }
+
+    /**
+     * Records fitness evaluations.
+     *
+     * @param n the number of evaluations
+     */
+    public void evaluated(long n) {
+        evaluations.add(n);
+    }
+
+    /**
+     * Records the evolution of a generation.
+     *
+     * @param nanos the time taken to evolve it
+     * @param best the fitness of the fittest of the generation
+     * @param average the average fitness of the generation
+     */
+    public void evolved(long nanos, double best, double average) {
+        evolveLatency.record(nanos);
+        bestFitness = best;
+        averageFitness = average;
+    }
+
+    /**
+     * Records a climb.
+     *
+     * @param neighbours the number of neighbours considered
+     * @param best the fitness of the best chromosome after the climb
+     */
+    public void climbed(int neighbours, double best) {
+        neighbourhoodSize.record(neighbours);
+        bestFitness = best;
+    }
+
+    /**
+     * Records a random restart.
+     */
+    public void restarted() {
+        restarts.increment();
+    }
+
+    /**
+     * Records a step that did not improve the best.
+     */
+    public void stalled() {
+        stalls.increment();
+    }
+
+    /**
+     * Records a new best chromosome.
+     *
+     * @param best the fitness of the best chromosome
+     */
+    public void improved(double best) {
+        bestFitness = best;
+    }
+
+    @Override
+    public long getEvaluations() {
+        return evaluations.sum();
+    }
+
+    @Override
+    public double getEvaluationRate() {
+        return evaluationRate.perSecond(evaluations.sum());
+    }
+
+    @Override
+    public long getRuns() {
+        return runs.sum();
+    }
+
+    @Override
+    public long getGenerations() {
+        return evolveLatency.getCount();
+    }
+
+    @Override
+    public double getGenerationRate() {
+        return generationRate.perSecond(evolveLatency.getCount());
+    }
+
+    @Override
+    public double getEvolveLatencyMean() {
+        return millis(evolveLatency.getMean());
+    }
+
+    @Override
+    public double getEvolveLatencyP50() {
+        return millis(evolveLatency.getValueAtPercentile(50));
+    }
+
+    @Override
+    public double getEvolveLatencyP99() {
+        return millis(evolveLatency.getValueAtPercentile(99));
+    }
+
+    @Override
+    public double getEvolveLatencyMax() {
+        return millis(evolveLatency.getMax());
+    }
+
+    @Override
+    public long getClimbs() {
+        return neighbourhoodSize.getCount();
+    }
+
+    @Override
+    public double getNeighbourhoodSizeMean() {
+        return neighbourhoodSize.getMean();
+    }
+
+    @Override
+    public long getNeighbourhoodSizeMax() {
+        return neighbourhoodSize.getMax();
+    }
+
+    @Override
+    public long getRestarts() {
+        return restarts.sum();
+    }
+
+    @Override
+    public long getStalls() {
+        return stalls.sum();
+    }
+
+    @Override
+    public double getBestFitness() {
+        return bestFitness;
+    }
+
+    @Override
+    public double getAverageFitness() {
+        return averageFitness;
+    }
+
+    /**
+     * Converts nanoseconds to milliseconds.
+     *
+     * @param nanos the time in nanoseconds
+     * @return time in milliseconds
+     */
+    private static double millis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * The rate a counter has grown at since it was last read.
+     */
+    private static class Rate {
+        /**
+         * The value of the counter when last read.
+         */
+        private long lastCount;
+
+        /**
+         * When the counter was last read.
+         */
+        private long lastNanos = System.nanoTime();
+
+        /**
+         * Returns the growth per second of the counter since it was last read.
+         *
+         * @param count the value of the counter
+         * @return rate per second
+         */
+        synchronized double perSecond(long count) {
+            long now = System.nanoTime();
+            double seconds = (now - lastNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+            double rate = seconds > 0 ? (count - lastCount) / seconds : 0;
+            lastCount = count;
+            lastNanos = now;
+            return rate;
+        }
+    }
+}
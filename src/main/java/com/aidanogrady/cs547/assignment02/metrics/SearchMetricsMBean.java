@@ -0,0 +1,125 @@
+package com.aidanogrady.cs547.assignment02.metrics;
+
+/**
+ * The attributes of a search's metrics published over JMX.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+public interface SearchMetricsMBean {
+    /**
+     * Returns the number of fitness evaluations performed.
+     *
+     * @return evaluations
+     */
+    long getEvaluations();
+
+    /**
+     * Returns the number of fitness evaluations per second since the rate was
+     * last read.
+     *
+     * @return evaluations per second
+     */
+    double getEvaluationRate();
+
+    /**
+     * Returns the number of searches started.
+     *
+     * @return runs
+     */
+    long getRuns();
+
+    /**
+     * Returns the number of generations evolved.
+     *
+     * @return generations
+     */
+    long getGenerations();
+
+    /**
+     * Returns the number of generations per second since the rate was last
+     * read.
+     *
+     * @return generations per second
+     */
+    double getGenerationRate();
+
+    /**
+     * Returns the mean time taken to evolve a generation.
+     *
+     * @return mean evolve latency in milliseconds
+     */
+    double getEvolveLatencyMean();
+
+    /**
+     * Returns the median time taken to evolve a generation.
+     *
+     * @return median evolve latency in milliseconds
+     */
+    double getEvolveLatencyP50();
+
+    /**
+     * Returns the 99th percentile of the time taken to evolve a generation.
+     *
+     * @return 99th percentile evolve latency in milliseconds
+     */
+    double getEvolveLatencyP99();
+
+    /**
+     * Returns the longest time taken to evolve a generation.
+     *
+     * @return max evolve latency in milliseconds
+     */
+    double getEvolveLatencyMax();
+
+    /**
+     * Returns the number of climbs taken.
+     *
+     * @return climbs
+     */
+    long getClimbs();
+
+    /**
+     * Returns the mean number of neighbours considered by each climb.
+     *
+     * @return mean neighbourhood size
+     */
+    double getNeighbourhoodSizeMean();
+
+    /**
+     * Returns the largest number of neighbours considered by a climb.
+     *
+     * @return max neighbourhood size
+     */
+    long getNeighbourhoodSizeMax();
+
+    /**
+     * Returns the number of random restarts.
+     *
+     * @return restarts
+     */
+    long getRestarts();
+
+    /**
+     * Returns the number of steps that did not improve the best.
+     *
+     * @return stalls
+     */
+    long getStalls();
+
+    /**
+     * Returns the fitness of the best chromosome most recently reported by
+     * any run.
+     *
+     * @return best fitness
+     */
+    double getBestFitness();
+
+    /**
+     * Returns the average fitness of the population most recently reported
+     * by any run.
+     *
+     * @return average fitness
+     */
+    double getAverageFitness();
+}
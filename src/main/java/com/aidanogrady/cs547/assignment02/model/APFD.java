@@ -0,0 +1,364 @@
+package com.aidanogrady.cs547.assignment02.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Evaluates the Average Percentage of Faults Detected (APFD) of an ordering of
+ * tests. Each test's faults are held as a bitset row of the fault matrix, so
+ * the faults first detected at each position can be found a word at a time
+ * rather than one fault at a time.
+ *
+ * The rows of a reduced suite have a bit per class of faults detected by the
+ * same tests, each weighted by the number of faults in its class, and score
+ * exactly as the faults they stand for would.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+public final class APFD {
+    /**
+     * Not to be instantiated.
+     */
+    private APFD() {
+    }
+
+    /**
+     * Returns the number of 64 bit words needed to hold the given number of
+     * faults.
+     *
+     * @param faults the number of faults
+     * @return words per row
+     */
+    public static int words(int faults) {
+        return (faults + 63) >>> 6;
+    }
+
+    /**
+     * Returns the number of faults the given bits of a word of a fault matrix
+     * row stand for.
+     *
+     * @param bits the bits of the word
+     * @param word the index of the word
+     * @param weights the faults each bit stands for, or null for one each
+     * @return number of faults
+     */
+    static int count(long bits, int word, int[] weights) {
+        if (weights == null)
+            return Long.bitCount(bits);
+        int count = 0;
+        for (; bits != 0; bits &= bits - 1)
+            count += weights[(word << 6) + Long.numberOfTrailingZeros(bits)];
+        return count;
+    }
+
+    /**
+     * Returns the sum of the positions at which each fault is first detected by
+     * the given ordering. Positions start at 1, and faults that are never
+     * detected count as being detected at position size + 1.
+     *
+     * @param candidate the ordering of tests
+     * @return sum of first detecting positions
+     */
+    public static long positionSum(List<TestCase> candidate) {
+        int faults = candidate.get(0).getNumOfFaults();
+        int[] weights = candidate.get(0).getWeights();
+        long[] detected = new long[candidate.get(0).getFaultRow().length];
+
+        long sum = 0;
+        int found = 0;
+        int position = 1;
+        for (TestCase tc : candidate) {
+            long[] row = tc.getFaultRow();
+            for (int w = 0; w < detected.length; w++) {
+                long fresh = row[w] & ~detected[w];
+                if (fresh != 0) {
+                    int count = count(fresh, w, weights);
+                    sum += (long) position * count;
+                    found += count;
+                    detected[w] |= fresh;
+                }
+            }
+            position++;
+        }
+        sum += (long) (faults - found) * position;
+        return sum;
+    }
+
+    /**
+     * Returns the sum of the positions at which each fault is first detected by
+     * the ordering of the given suite indices.
+     *
+     * @param suite the test suite
+     * @param genes the ordering, as indices into the suite
+     * @return sum of first detecting positions
+     */
+    public static long positionSum(List<TestCase> suite, int[] genes) {
+        return positionSum(suite, genes, new long[suite.get(genes[0]).getFaultRow().length]);
+    }
+
+    /**
+     * Returns the sum of the positions at which each fault is first detected by
+     * the ordering of the given suite indices, without allocating.
+     *
+     * @param suite the test suite
+     * @param genes the ordering, as indices into the suite
+     * @param detected scratch space of one fault matrix row
+     * @return sum of first detecting positions
+     */
+    public static long positionSum(List<TestCase> suite, int[] genes, long[] detected) {
+        int faults = suite.get(genes[0]).getNumOfFaults();
+        int[] weights = suite.get(genes[0]).getWeights();
+        Arrays.fill(detected, 0L);
+
+        long sum = 0;
+        int found = 0;
+        for (int p = 0; p < genes.length; p++) {
+            long[] row = suite.get(genes[p]).getFaultRow();
+            for (int w = 0; w < detected.length; w++) {
+                long fresh = row[w] & ~detected[w];
+                if (fresh != 0) {
+                    int count = count(fresh, w, weights);
+                    sum += (long) (p + 1) * count;
+                    found += count;
+                    detected[w] |= fresh;
+                }
+            }
+        }
+        sum += (long) (faults - found) * (genes.length + 1);
+        return sum;
+    }
+
+    /**
+     * Calculates the fitness of the ordering of the given suite indices.
+     *
+     * @param suite the test suite
+     * @param genes the ordering, as indices into the suite
+     * @return fitness
+     */
+    public static double fitness(List<TestCase> suite, int[] genes) {
+        return fitness(positionSum(suite, genes), suite.get(genes[0]).getNumOfFaults(),
+                genes.length);
+    }
+
+    /**
+     * Calculates the fitness of the ordering of the given suite indices,
+     * without allocating.
+     *
+     * @param suite the test suite
+     * @param genes the ordering, as indices into the suite
+     * @param detected scratch space of one fault matrix row
+     * @return fitness
+     */
+    public static double fitness(List<TestCase> suite, int[] genes, long[] detected) {
+        return fitness(positionSum(suite, genes, detected),
+                suite.get(genes[0]).getNumOfFaults(), genes.length);
+    }
+
+    /**
+     * Calculates the fitness of the given ordering, where lower is better.
+     *
+     * @param candidate the ordering of tests
+     * @return fitness
+     */
+    public static double fitness(List<TestCase> candidate) {
+        return fitness(positionSum(candidate), candidate.get(0).getNumOfFaults(),
+                candidate.size());
+    }
+
+    /**
+     * Calculates the fitness from the sum of first detecting positions.
+     *
+     * @param sum the sum of first detecting positions
+     * @param faults the number of faults
+     * @param size the number of tests in the ordering
+     * @return fitness
+     */
+    public static double fitness(long sum, int faults, int size) {
+        double fitness = 1.0;
+        fitness -= (double) sum / (faults * size);
+        fitness += 1.0 / (2 * size);
+        return 1.0 - fitness;
+    }
+
+    /**
+     * Records where each fault is detected in the given ordering, allowing the
+     * fitness of single test replacements to be evaluated incrementally.
+     *
+     * @param candidate the ordering of tests
+     * @return detections of the ordering
+     */
+    public static Detections detections(List<TestCase> candidate) {
+        return new Detections(candidate);
+    }
+
+    /**
+     * The positions at which each fault is detected in an ordering. For each
+     * fault, the first and second detecting positions are kept along with the
+     * faults already detected before each position. Replacing the test at one
+     * position can then only move a fault's first detection to that position,
+     * or from that position to its second detection, so the new score follows
+     * from the faults that the old and new tests differ on.
+     *
+     * @author Aidan O'Grady
+     * @since 0.3
+     */
+    public static final class Detections {
+        /**
+         * The ordering these detections describe.
+         */
+        private final List<TestCase> candidate;
+
+        /**
+         * The total number of faults.
+         */
+        private final int faults;
+
+        /**
+         * The faults each bit of a row stands for, or null for one each.
+         */
+        private final int[] weights;
+
+        /**
+         * The faults detected before each position.
+         */
+        private final long[][] before;
+
+        /**
+         * The first position detecting each fault, or size + 1.
+         */
+        private final int[] first;
+
+        /**
+         * The second position detecting each fault, or size + 1.
+         */
+        private final int[] second;
+
+        /**
+         * The sum of first detecting positions.
+         */
+        private final long sum;
+
+        /**
+         * Constructor.
+         *
+         * @param candidate the ordering of tests
+         */
+        private Detections(List<TestCase> candidate) {
+            this.candidate = candidate;
+            this.faults = candidate.get(0).getNumOfFaults();
+            this.weights = candidate.get(0).getWeights();
+
+            int size = candidate.size();
+            int words = candidate.get(0).getFaultRow().length;
+            int bits = weights == null ? faults : weights.length;
+            before = new long[size][];
+            first = new int[bits];
+            second = new int[bits];
+
+            long[] detected = new long[words];
+            long[] twice = new long[words];
+            for (int p = 0; p < size; p++) {
+                before[p] = detected.clone();
+                long[] row = candidate.get(p).getFaultRow();
+                for (int w = 0; w < words; w++) {
+                    long fresh = row[w] & ~detected[w];
+                    long again = row[w] & detected[w] & ~twice[w];
+                    mark(first, w, fresh, p + 1);
+                    mark(second, w, again, p + 1);
+                    detected[w] |= fresh;
+                    twice[w] |= again;
+                }
+            }
+
+            long sum = 0;
+            for (int f = 0; f < bits; f++) {
+                if (first[f] == 0)
+                    first[f] = size + 1;
+                if (second[f] == 0)
+                    second[f] = size + 1;
+                sum += (long) first[f] * weight(f);
+            }
+            this.sum = sum;
+        }
+
+        /**
+         * Sets the given position for each fault in the bits of a word.
+         *
+         * @param positions the positions per fault
+         * @param word the index of the word
+         * @param bits the faults in the word to set
+         * @param position the position to set
+         */
+        private static void mark(int[] positions, int word, long bits, int position) {
+            while (bits != 0) {
+                positions[(word << 6) + Long.numberOfTrailingZeros(bits)] = position;
+                bits &= bits - 1;
+            }
+        }
+
+        /**
+         * Returns the number of faults the given bit of a row stands for.
+         *
+         * @param bit the bit of the row
+         * @return weight
+         */
+        private int weight(int bit) {
+            return weights == null ? 1 : weights[bit];
+        }
+
+        /**
+         * Returns the sum of first detecting positions.
+         *
+         * @return sum
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * Returns the sum of first detecting positions if the test at the given
+         * index were replaced with the given test.
+         *
+         * @param index the index of the test to replace
+         * @param replacement the test to put in its place
+         * @return sum after the replacement
+         */
+        public long sumWith(int index, TestCase replacement) {
+            int position = index + 1;
+            long[] prior = before[index];
+            long[] current = candidate.get(index).getFaultRow();
+            long[] next = replacement.getFaultRow();
+
+            long delta = 0;
+            for (int w = 0; w < prior.length; w++) {
+                long open = ~prior[w];
+                long lost = open & current[w] & ~next[w];
+                long gained = open & ~current[w] & next[w];
+                while (lost != 0) {
+                    int f = (w << 6) + Long.numberOfTrailingZeros(lost);
+                    delta += (long) (second[f] - position) * weight(f);
+                    lost &= lost - 1;
+                }
+                while (gained != 0) {
+                    int f = (w << 6) + Long.numberOfTrailingZeros(gained);
+                    delta += (long) (position - first[f]) * weight(f);
+                    gained &= gained - 1;
+                }
+            }
+            return sum + delta;
+        }
+
+        /**
+         * Returns the fitness if the test at the given index were replaced with
+         * the given test.
+         *
+         * @param index the index of the test to replace
+         * @param replacement the test to put in its place
+         * @return fitness after the replacement
+         */
+        public double fitnessWith(int index, TestCase replacement) {
+            return fitness(sumWith(index, replacement), faults, candidate.size());
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package com.aidanogrady.cs547.assignment02.model;
+
+import java.util.Properties;
+
+/**
+ * The crossover operators a population can breed with, chosen by the
+ * ga.crossover.operator property. Each writes a child holding the same number
+ * of distinct tests as its parents, in time linear in that number, and never
+ * fails, even when the parents hold different tests of the suite.
+ *
+ * Tests are tracked by bitsets over the suite and an array mapping each test
+ * to its place in a parent. These are kept per thread and reused, and the
+ * bitsets are cleared after each crossover, so nothing is allocated once a
+ * thread's scratch has grown to the suite.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+enum Crossover {
+    /**
+     * One point crossover: the first parent's tests before the cut, then the
+     * second parent's tests not yet taken, in order.
+     */
+    ONE_POINT("onepoint") {
+        @Override
+        int drawFrom(Rng rng, int size) {
+            return 0;
+        }
+
+        @Override
+        int drawTo(Rng rng, int size, int from) {
+            return rng.nextInt(size);
+        }
+
+        @Override
+        void cross(int[] first, int[] second, int from, int to, int[] child, Scratch s) {
+            int length = 0;
+            for (int i = 0; i < to; i++) {
+                child[length++] = first[i];
+                s.set(s.taken, first[i]);
+            }
+            for (int i = 0; length < child.length; i++) {
+                int gene = second[i];
+                if (!s.get(s.taken, gene)) {
+                    child[length++] = gene;
+                    s.set(s.taken, gene);
+                }
+            }
+            s.clear(s.taken, child);
+        }
+    },
+
+    /**
+     * Order crossover: the first parent's tests between the cuts stay in
+     * place, and the places after them, wrapping around, take the second
+     * parent's tests not yet taken, in order from its second cut.
+     */
+    ORDER("ox") {
+        @Override
+        void cross(int[] first, int[] second, int from, int to, int[] child, Scratch s) {
+            int size = child.length;
+            for (int i = from; i < to; i++) {
+                child[i] = first[i];
+                s.set(s.taken, first[i]);
+            }
+            int place = to == size ? 0 : to;
+            int next = place;
+            for (int filled = to - from; filled < size; next = next + 1 == size ? 0 : next + 1) {
+                int gene = second[next];
+                if (!s.get(s.taken, gene)) {
+                    child[place] = gene;
+                    s.set(s.taken, gene);
+                    place = place + 1 == size ? 0 : place + 1;
+                    filled++;
+                }
+            }
+            s.clear(s.taken, child);
+        }
+    },
+
+    /**
+     * Partially mapped crossover: the first parent's tests between the cuts
+     * stay in place, and every other place takes the second parent's test
+     * there, or, if that test is already taken, the test the second parent
+     * holds where the first holds it, until one not taken is reached. As
+     * these chains never cross, following them takes linear time in all.
+     */
+    PMX("pmx") {
+        @Override
+        void cross(int[] first, int[] second, int from, int to, int[] child, Scratch s) {
+            for (int i = from; i < to; i++) {
+                child[i] = first[i];
+                s.set(s.taken, first[i]);
+                s.position[first[i]] = i;
+            }
+            for (int i = 0; i < from; i++)
+                child[i] = map(second, second[i], s);
+            for (int i = to; i < child.length; i++)
+                child[i] = map(second, second[i], s);
+            for (int i = from; i < to; i++)
+                s.taken[first[i] >>> 6] = 0;
+        }
+
+        /**
+         * Follows the chain of tests from the given test of the second
+         * parent to the first not taken.
+         *
+         * @param second the second parent
+         * @param gene the test to start from
+         * @param s the thread's scratch
+         * @return the first test of the chain not taken
+         */
+        private int map(int[] second, int gene, Scratch s) {
+            while (s.get(s.taken, gene))
+                gene = second[s.position[gene]];
+            return gene;
+        }
+    },
+
+    /**
+     * Cycle crossover: places are split into cycles, each place leading to
+     * the place the first parent holds the second parent's test in, and the
+     * child takes alternate cycles from alternate parents, so every test
+     * keeps the place it has in one parent. When the parents hold different
+     * tests, a chain of places ends at a test the first parent lacks; such
+     * chains are taken whole, from the test the second parent lacks, like
+     * cycles. The cuts are not used.
+     */
+    CYCLE("cycle") {
+        @Override
+        int drawFrom(Rng rng, int size) {
+            return 0;
+        }
+
+        @Override
+        int drawTo(Rng rng, int size, int from) {
+            return 0;
+        }
+
+        @Override
+        void cross(int[] first, int[] second, int from, int to, int[] child, Scratch s) {
+            for (int i = 0; i < child.length; i++) {
+                s.set(s.taken, first[i]);
+                s.set(s.other, second[i]);
+                s.position[first[i]] = i;
+            }
+
+            // Chains start where the first parent holds a test the second
+            // lacks; the places left over all lie on cycles.
+            boolean fromSecond = false;
+            for (int i = 0; i < child.length; i++) {
+                if (!s.get(s.other, first[i])) {
+                    follow(first, second, i, child, fromSecond, s);
+                    fromSecond = !fromSecond;
+                }
+            }
+            for (int i = 0; i < child.length; i++) {
+                if ((s.visited[i >>> 6] & (1L << i)) == 0) {
+                    follow(first, second, i, child, fromSecond, s);
+                    fromSecond = !fromSecond;
+                }
+            }
+
+            s.clear(s.taken, first);
+            s.clear(s.other, second);
+            for (int i = 0; i < child.length; i += 64)
+                s.visited[i >>> 6] = 0;
+        }
+
+        /**
+         * Fills the places of the cycle or chain starting at the given place
+         * from one parent.
+         *
+         * @param first the first parent
+         * @param second the second parent
+         * @param start the place to start at
+         * @param child the child being written
+         * @param fromSecond whether the places are filled from the second
+         * parent
+         * @param s the thread's scratch
+         */
+        private void follow(int[] first, int[] second, int start, int[] child, boolean fromSecond,
+                            Scratch s) {
+            int i = start;
+            do {
+                s.visited[i >>> 6] |= 1L << i;
+                child[i] = fromSecond ? second[i] : first[i];
+                int gene = second[i];
+                if (!s.get(s.taken, gene))
+                    break;
+                i = s.position[gene];
+            } while (i != start);
+        }
+    };
+
+    /**
+     * The scratch of each thread.
+     */
+    private static final ThreadLocal<Scratch> LOCAL = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * The name of the operator in the ga.crossover.operator property.
+     */
+    private final String label;
+
+    /**
+     * Constructor.
+     *
+     * @param label the name of the operator in properties
+     */
+    Crossover(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Returns the operator named by the ga.crossover.operator property,
+     * onepoint by default.
+     *
+     * @param props the properties that may name an operator
+     * @return operator
+     */
+    static Crossover fromProperties(Properties props) {
+        String name = props.getProperty("ga.crossover.operator", "onepoint");
+        for (Crossover operator : values()) {
+            if (operator.label.equals(name))
+                return operator;
+        }
+        throw new IllegalArgumentException("ga.crossover.operator must be onepoint, ox, pmx or cycle");
+    }
+
+    /**
+     * Draws the first cut of a crossover.
+     *
+     * @param rng the random stream to draw from
+     * @param size the number of tests in each parent
+     * @return the first place between the cuts
+     */
+    int drawFrom(Rng rng, int size) {
+        return rng.nextInt(size);
+    }
+
+    /**
+     * Draws the second cut of a crossover, so that at least one place lies
+     * between the cuts.
+     *
+     * @param rng the random stream to draw from
+     * @param size the number of tests in each parent
+     * @param from the first cut
+     * @return the place after the last between the cuts
+     */
+    int drawTo(Rng rng, int size, int from) {
+        return from + 1 + rng.nextInt(size - from);
+    }
+
+    /**
+     * Writes the child of the given parents into the given array, which is
+     * as long as each parent.
+     *
+     * @param first the parent whose tests are kept between the cuts
+     * @param second the other parent
+     * @param from the first place between the cuts
+     * @param to the place after the last between the cuts
+     * @param child the array to write the child to
+     * @param s the thread's scratch, cleared
+     */
+    abstract void cross(int[] first, int[] second, int from, int to, int[] child, Scratch s);
+
+    /**
+     * Writes the child of the given parents into the given array.
+     *
+     * @param first the parent whose tests are kept between the cuts
+     * @param second the other parent
+     * @param from the first place between the cuts
+     * @param to the place after the last between the cuts
+     * @param child the array to write the child to
+     * @param n the number of tests in the suite
+     */
+    void cross(int[] first, int[] second, int from, int to, int[] child, int n) {
+        cross(first, second, from, to, child, LOCAL.get().grow(n, child.length));
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+
+    /**
+     * The scratch space of a thread's crossovers. The bitsets are left
+     * cleared between crossovers, while stale places may be left in the
+     * array of places, as they are only read for tests that are set.
+     */
+    static final class Scratch {
+        /**
+         * The tests taken by the child, or held by the first parent.
+         */
+        long[] taken = new long[0];
+
+        /**
+         * The tests held by the second parent.
+         */
+        long[] other = new long[0];
+
+        /**
+         * The place of each test in the first parent.
+         */
+        int[] position = new int[0];
+
+        /**
+         * The places of the child already filled.
+         */
+        long[] visited = new long[0];
+
+        /**
+         * Grows the scratch to the given suite and chromosome sizes.
+         *
+         * @param n the number of tests in the suite
+         * @param size the number of tests in each chromosome
+         * @return this scratch
+         */
+        Scratch grow(int n, int size) {
+            if (position.length < n) {
+                taken = new long[APFD.words(n)];
+                other = new long[APFD.words(n)];
+                position = new int[n];
+            }
+            if (visited.length < APFD.words(size))
+                visited = new long[APFD.words(size)];
+            return this;
+        }
+
+        /**
+         * Returns whether the given test is set in a bitset.
+         *
+         * @param bits the bitset
+         * @param gene the test
+         * @return true if set
+         */
+        boolean get(long[] bits, int gene) {
+            return (bits[gene >>> 6] & (1L << gene)) != 0;
+        }
+
+        /**
+         * Sets the given test in a bitset.
+         *
+         * @param bits the bitset
+         * @param gene the test
+         */
+        void set(long[] bits, int gene) {
+            bits[gene >>> 6] |= 1L << gene;
+        }
+
+        /**
+         * Clears the given tests from a bitset, along with any other tests
+         * sharing their words.
+         *
+         * @param bits the bitset
+         * @param genes the tests
+         */
+        void clear(long[] bits, int[] genes) {
+            for (int gene : genes)
+                bits[gene >>> 6] = 0;
+        }
+    }
+}
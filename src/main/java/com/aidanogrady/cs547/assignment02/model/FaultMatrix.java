@@ -0,0 +1,86 @@
+package com.aidanogrady.cs547.assignment02.model;
+
+import java.util.List;
+
+/**
+ * A loaded fault matrix. Tests detecting exactly the same faults are
+ * duplicates of each other for prioritisation, so only the first of each is
+ * kept as a distinct test, with every test in the matrix mapped to the
+ * distinct test it duplicates.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+public class FaultMatrix {
+    /**
+     * The distinct tests, in the order they first appear.
+     */
+    private final List<TestCase> testCases;
+
+    /**
+     * The number of faults in the matrix.
+     */
+    private final int numOfFaults;
+
+    /**
+     * The names of every test in the matrix, in order.
+     */
+    private final String[] testNames;
+
+    /**
+     * The index of the distinct test each test in the matrix duplicates.
+     */
+    private final int[] distinct;
+
+    /**
+     * Constructor.
+     *
+     * @param testCases the distinct tests
+     * @param numOfFaults the number of faults
+     * @param testNames the names of every test
+     * @param distinct the index of the distinct test of every test
+     */
+    public FaultMatrix(List<TestCase> testCases, int numOfFaults, String[] testNames, int[] distinct) {
+        this.testCases = testCases;
+        this.numOfFaults = numOfFaults;
+        this.testNames = testNames;
+        this.distinct = distinct;
+    }
+
+    /**
+     * Returns the distinct tests.
+     *
+     * @return testCases
+     */
+    public List<TestCase> getTestCases() {
+        return testCases;
+    }
+
+    /**
+     * Returns the number of faults.
+     *
+     * @return numOfFaults
+     */
+    public int getNumOfFaults() {
+        return numOfFaults;
+    }
+
+    /**
+     * Returns the names of every test in the matrix, including duplicates.
+     *
+     * @return testNames
+     */
+    public String[] getTestNames() {
+        return testNames;
+    }
+
+    /**
+     * Returns the index of the distinct test each test in the matrix
+     * duplicates.
+     *
+     * @return distinct test indices
+     */
+    public int[] getDistinct() {
+        return distinct;
+    }
+}
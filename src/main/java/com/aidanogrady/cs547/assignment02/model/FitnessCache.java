@@ -0,0 +1,192 @@
+package com.aidanogrady.cs547.assignment02.model;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of the fitness of orderings already evaluated, so that an
+ * ordering bred or visited again costs a hash probe rather than a fitness
+ * evaluation. Orderings are keyed by a hash of their test indices that can be
+ * updated in constant time when a single test is replaced.
+ *
+ * The cache is a fixed size table with one entry per slot. An ordering is
+ * stored in the slot picked by its hash, evicting whatever was there, so the
+ * cache never grows beyond its capacity. Entries keep a copy of the ordering,
+ * so a hit is always exact. Entries are immutable and published through the
+ * table without locking, making the cache safe to share between threads: a
+ * racing lookup may miss, but never sees a partial entry.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+public final class FitnessCache {
+    /**
+     * The table of entries, whose length is a power of two.
+     */
+    private final Entry[] table;
+
+    /**
+     * The number of lookups that found their ordering.
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * The number of lookups that did not find their ordering.
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructor.
+     *
+     * @param capacity the maximum number of orderings to hold, which is
+     * rounded up to a power of two
+     */
+    public FitnessCache(int capacity) {
+        int length = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        table = new Entry[capacity <= 1 ? 1 : length];
+    }
+
+    /**
+     * Constructs a cache of the size given by the cache.size property.
+     *
+     * @param props the properties that may give a cache size
+     * @return cache, or null if no cache size above 0 is given
+     */
+    public static FitnessCache fromProperties(Properties props) {
+        int capacity = Integer.parseInt(props.getProperty("cache.size", "0"));
+        return capacity > 0 ? new FitnessCache(capacity) : null;
+    }
+
+    /**
+     * Returns the hash of the given ordering of test indices. The hash is the
+     * sum of a mix of each index with its position, so is order sensitive.
+     *
+     * @param genes the ordering of test indices
+     * @return hash
+     */
+    public static long hash(int[] genes) {
+        long hash = 0;
+        for (int p = 0; p < genes.length; p++)
+            hash += term(p, genes[p]);
+        return hash;
+    }
+
+    /**
+     * Returns the hash of an ordering after the test at one position is
+     * replaced.
+     *
+     * @param hash the hash of the ordering
+     * @param position the position of the replaced test
+     * @param oldGene the index of the test replaced
+     * @param newGene the index of the test replacing it
+     * @return hash after the replacement
+     */
+    public static long rehash(long hash, int position, int oldGene, int newGene) {
+        return hash - term(position, oldGene) + term(position, newGene);
+    }
+
+    /**
+     * Returns the contribution of a test at a position to the hash.
+     *
+     * @param position the position of the test
+     * @param gene the index of the test
+     * @return mixed term
+     */
+    private static long term(int position, int gene) {
+        long z = ((long) position << 32 | gene) * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Returns the cached fitness of the given ordering.
+     *
+     * @param hash the hash of the ordering
+     * @param genes the ordering of test indices
+     * @return fitness, or NaN if the ordering is not cached
+     */
+    public double get(long hash, int[] genes) {
+        Entry entry = table[slot(hash)];
+        if (entry != null && entry.hash == hash && Arrays.equals(entry.genes, genes)) {
+            hits.increment();
+            return entry.fitness;
+        }
+        misses.increment();
+        return Double.NaN;
+    }
+
+    /**
+     * Caches the fitness of the given ordering, evicting the ordering
+     * occupying its slot.
+     *
+     * @param hash the hash of the ordering
+     * @param genes the ordering of test indices, which is copied
+     * @param fitness the fitness of the ordering
+     */
+    public void put(long hash, int[] genes, double fitness) {
+        table[slot(hash)] = new Entry(hash, genes.clone(), fitness);
+    }
+
+    /**
+     * Returns the slot of the table for the given hash.
+     *
+     * @param hash the hash of an ordering
+     * @return slot
+     */
+    private int slot(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & (table.length - 1);
+    }
+
+    /**
+     * Returns the number of lookups that found their ordering.
+     *
+     * @return hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that did not find their ordering.
+     *
+     * @return misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * An ordering and its fitness.
+     */
+    private static final class Entry {
+        /**
+         * The hash of the ordering.
+         */
+        final long hash;
+
+        /**
+         * The ordering of test indices.
+         */
+        final int[] genes;
+
+        /**
+         * The fitness of the ordering.
+         */
+        final double fitness;
+
+        /**
+         * Constructor.
+         *
+         * @param hash the hash of the ordering
+         * @param genes the ordering of test indices
+         * @param fitness the fitness of the ordering
+         */
+        Entry(long hash, int[] genes, double fitness) {
+            this.hash = hash;
+            this.genes = genes;
+            this.fitness = fitness;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.aidanogrady.cs547.assignment02.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The state of a population between generations, from which it can be
+ * restored to carry on evolving exactly as it would have. A snapshot holds
+ * its own copies of the chromosomes' test indices and fitnesses, so it can be
+ * written out on another thread while the population evolves. Along with the
+ * state of the population's random stream, it carries the counters of the
+ * search that evolved it.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+public final class PopulationSnapshot {
+    /**
+     * The number of tests in the suite the population was evolved over.
+     */
+    private final int tests;
+
+    /**
+     * The fingerprint of the suite the population was evolved over.
+     */
+    private final int suite;
+
+    /**
+     * The test indices of each chromosome, in population order.
+     */
+    private final int[][] genes;
+
+    /**
+     * The fitness of each chromosome, in population order.
+     */
+    private final double[] fitness;
+
+    /**
+     * The state of the population's random stream.
+     */
+    private final long seed;
+
+    /**
+     * The increment of the population's random stream.
+     */
+    private final long gamma;
+
+    /**
+     * The number of evaluations the population had performed.
+     */
+    private final long evaluations;
+
+    /**
+     * The number of generations the search had gone through.
+     */
+    private final int generations;
+
+    /**
+     * The number of generations the search's best had stalled for.
+     */
+    private final int stalls;
+
+    /**
+     * Constructor.
+     *
+     * @param tests the number of tests in the suite
+     * @param suite the fingerprint of the suite
+     * @param genes the test indices of each chromosome
+     * @param fitness the fitness of each chromosome
+     * @param seed the state of the random stream
+     * @param gamma the increment of the random stream
+     * @param evaluations the number of evaluations performed
+     * @param generations the number of generations gone through
+     * @param stalls the number of generations stalled for
+     */
+    public PopulationSnapshot(int tests, int suite, int[][] genes, double[] fitness, long seed, long gamma,
+                              long evaluations, int generations, int stalls) {
+        if (genes.length != fitness.length)
+            throw new IllegalArgumentException("a fitness is needed for each chromosome");
+        this.tests = tests;
+        this.suite = suite;
+        this.genes = genes;
+        this.fitness = fitness;
+        this.seed = seed;
+        this.gamma = gamma;
+        this.evaluations = evaluations;
+        this.generations = generations;
+        this.stalls = stalls;
+    }
+
+    /**
+     * Returns the fingerprint of a suite, being a hash of its fault matrix
+     * rows in order, so that a snapshot is not restored over another suite.
+     *
+     * @param testCases the suite
+     * @return fingerprint
+     */
+    public static int fingerprint(List<TestCase> testCases) {
+        int hash = testCases.size();
+        for (TestCase test : testCases)
+            hash = 31 * hash + Arrays.hashCode(test.getFaultRow());
+        return hash;
+    }
+
+    /**
+     * Returns the number of tests in the suite the population was evolved
+     * over.
+     *
+     * @return tests
+     */
+    public int getTests() {
+        return tests;
+    }
+
+    /**
+     * Returns the fingerprint of the suite the population was evolved over.
+     *
+     * @return fingerprint
+     */
+    public int getSuite() {
+        return suite;
+    }
+
+    /**
+     * Returns the number of chromosomes in the population.
+     *
+     * @return population size
+     */
+    public int getSize() {
+        return genes.length;
+    }
+
+    /**
+     * Returns the test indices of the chromosome at the given place in the
+     * population.
+     *
+     * @param i the place of the chromosome
+     * @return test indices, which must not be modified
+     */
+    public int[] getGenes(int i) {
+        return genes[i];
+    }
+
+    /**
+     * Returns the fitness of the chromosome at the given place in the
+     * population.
+     *
+     * @param i the place of the chromosome
+     * @return fitness
+     */
+    public double getFitness(int i) {
+        return fitness[i];
+    }
+
+    /**
+     * Returns a copy of the population's random stream as it was.
+     *
+     * @return random stream
+     */
+    public Rng getRng() {
+        return new Rng(seed, gamma);
+    }
+
+    /**
+     * Returns the state of the population's random stream.
+     *
+     * @return state
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the increment of the population's random stream.
+     *
+     * @return gamma
+     */
+    public long getGamma() {
+        return gamma;
+    }
+
+    /**
+     * Returns the number of evaluations the population had performed.
+     *
+     * @return evaluations
+     */
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * Returns the number of generations the search had gone through.
+     *
+     * @return generations
+     */
+    public int getGenerations() {
+        return generations;
+    }
+
+    /**
+     * Returns the number of generations the search's best had stalled for.
+     *
+     * @return stalls
+     */
+    public int getStalls() {
+        return stalls;
+    }
+}
@@ -0,0 +1,162 @@
+package com.aidanogrady.cs547.assignment02.model;
+
+import java.util.Properties;
+
+/**
+ * A fast, seedable and splittable source of randomness, being the SplitMix64
+ * generator. Every search, run and worker thread is given its own stream split
+ * from a single seed, so that runs can be reproduced exactly and no state is
+ * shared between threads. A stream is not safe to use from several threads.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+public final class Rng {
+    /**
+     * The odd increment used by streams created from a seed.
+     */
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /**
+     * The current state of this stream.
+     */
+    private long seed;
+
+    /**
+     * The odd increment added to the state for each value.
+     */
+    private final long gamma;
+
+    /**
+     * Constructs a stream from the given seed.
+     *
+     * @param seed the seed
+     */
+    public Rng(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    /**
+     * Constructs a stream from the given state and increment, such as those of
+     * a stream being restored.
+     *
+     * @param seed the state
+     * @param gamma the increment, which must be odd
+     */
+    public Rng(long seed, long gamma) {
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    /**
+     * Constructs a stream from the seed property, or from the clock if no seed
+     * is given.
+     *
+     * @param props the properties that may hold a seed
+     * @return random stream
+     */
+    public static Rng fromProperties(Properties props) {
+        String seed = props.getProperty("seed");
+        return new Rng(seed == null ? mix64(System.nanoTime()) : Long.parseLong(seed));
+    }
+
+    /**
+     * Returns the current state of this stream.
+     *
+     * @return state
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the increment of this stream.
+     *
+     * @return gamma
+     */
+    public long getGamma() {
+        return gamma;
+    }
+
+    /**
+     * Returns a new stream that is independent of this one, advancing this
+     * stream by two values.
+     *
+     * @return split stream
+     */
+    public Rng split() {
+        return new Rng(mix64(nextSeed()), mixGamma(nextSeed()));
+    }
+
+    /**
+     * Returns a random long.
+     *
+     * @return random long
+     */
+    public long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    /**
+     * Returns a random int between 0 (inclusive) and the bound (exclusive).
+     *
+     * @param bound the upper bound, which must be positive
+     * @return random int
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0)
+            throw new IllegalArgumentException("bound must be positive");
+        int r = (int) (nextLong() >>> 33);
+        int m = bound - 1;
+        if ((bound & m) == 0)
+            return r & m;
+        for (int u = r; u - (r = u % bound) + m < 0; u = (int) (nextLong() >>> 33))
+            ;
+        return r;
+    }
+
+    /**
+     * Returns a random double between 0.0 (inclusive) and 1.0 (exclusive).
+     *
+     * @return random double
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Advances the state of this stream.
+     *
+     * @return new state
+     */
+    private long nextSeed() {
+        return seed += gamma;
+    }
+
+    /**
+     * The SplitMix64 finaliser.
+     *
+     * @param z the value to mix
+     * @return mixed value
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Derives an increment for a split stream, ensuring it is odd and has
+     * enough bit transitions to give a good stream.
+     *
+     * @param z the value to derive from
+     * @return odd increment
+     */
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int n = Long.bitCount(z ^ (z >>> 1));
+        return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
@@ -0,0 +1,110 @@
+package com.aidanogrady.cs547.assignment02.model;
+
+/**
+ * Draws random tests without rejection, so the cost of drawing does not grow
+ * as the number of tests drawn approaches the size of the suite.
+ *
+ * Orderings are drawn by a partial Fisher-Yates shuffle over an array of
+ * suite indices, which is kept per thread and reused. The swaps are undone
+ * after each draw, so the array always starts in order and a draw depends
+ * only on the random stream, not on the draws made before it on the thread.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+final class Sampler {
+    /**
+     * The sampler of each thread.
+     */
+    private static final ThreadLocal<Sampler> LOCAL = ThreadLocal.withInitial(Sampler::new);
+
+    /**
+     * The suite indices in order, between draws.
+     */
+    private int[] indices = new int[0];
+
+    /**
+     * The position each index was swapped with during a draw.
+     */
+    private int[] swaps = new int[0];
+
+    /**
+     * Not to be instantiated outside of LOCAL.
+     */
+    private Sampler() {
+    }
+
+    /**
+     * Draws a uniformly random ordering of distinct suite indices in O(size)
+     * time, once the thread's scratch has grown to the suite.
+     *
+     * @param size the number of indices to draw
+     * @param n the size of the suite
+     * @param rng the random stream to draw from
+     * @param out the array to write the ordering to
+     */
+    static void sample(int size, int n, Rng rng, int[] out) {
+        if (size > n)
+            throw new IllegalArgumentException("cannot draw " + size + " tests from " + n);
+        LOCAL.get().draw(size, n, rng, out);
+    }
+
+    /**
+     * Draws an ordering, as sample does.
+     *
+     * @param size the number of indices to draw
+     * @param n the size of the suite
+     * @param rng the random stream to draw from
+     * @param out the array to write the ordering to
+     */
+    private void draw(int size, int n, Rng rng, int[] out) {
+        if (indices.length < n) {
+            indices = new int[n];
+            for (int i = 0; i < n; i++)
+                indices[i] = i;
+            swaps = new int[n];
+        }
+
+        for (int i = 0; i < size; i++) {
+            int j = i + rng.nextInt(n - i);
+            swaps[i] = j;
+            int t = indices[i];
+            indices[i] = indices[j];
+            indices[j] = t;
+            out[i] = indices[i];
+        }
+
+        for (int i = size - 1; i >= 0; i--) {
+            int j = swaps[i];
+            int t = indices[i];
+            indices[i] = indices[j];
+            indices[j] = t;
+        }
+    }
+
+    /**
+     * Draws a uniformly random suite index that is not in the given bitset,
+     * by selecting among the clear bits a word at a time.
+     *
+     * @param members a bitset over the suite
+     * @param count the number of bits set
+     * @param n the size of the suite
+     * @param rng the random stream to draw from
+     * @return index not in members
+     */
+    static int nonMember(long[] members, int count, int n, Rng rng) {
+        int rank = rng.nextInt(n - count);
+        for (int w = 0; ; w++) {
+            long clear = ~members[w];
+            if (w == (n - 1) >>> 6 && (n & 63) != 0)
+                clear &= (1L << n) - 1;
+            int available = Long.bitCount(clear);
+            if (rank < available) {
+                for (int i = 0; i < rank; i++)
+                    clear &= clear - 1;
+                return (w << 6) + Long.numberOfTrailingZeros(clear);
+            }
+            rank -= available;
+        }
+    }
+}
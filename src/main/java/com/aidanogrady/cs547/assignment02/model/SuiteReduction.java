@@ -0,0 +1,213 @@
+package com.aidanogrady.cs547.assignment02.model;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shrinks a test suite before it is searched, without changing the best
+ * ordering that can be found or the fitness of any ordering.
+ *
+ * Tests whose faults are a strict subset of another test's are dropped. An
+ * ordering holding a dominated test can always be made at least as fit by
+ * putting a test dominating it in its place, and filling any place that frees
+ * up with a test not yet in the ordering, so the tests kept still hold an
+ * optimal ordering as long as there are at least as many of them as an
+ * ordering has tests. If there are fewer, no tests are dropped.
+ *
+ * Faults detected by exactly the same kept tests are then always first
+ * detected at the same position, so each such class of faults is collapsed
+ * into a single bit of the fault matrix rows, weighted by the number of faults
+ * in it.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+public final class SuiteReduction {
+    /**
+     * The tests of the reduced suite.
+     */
+    private final List<TestCase> testCases;
+
+    /**
+     * The number of tests before reduction.
+     */
+    private final int originalTests;
+
+    /**
+     * The number of faults.
+     */
+    private final int faults;
+
+    /**
+     * The number of fault classes after reduction.
+     */
+    private final int classes;
+
+    /**
+     * Constructor.
+     *
+     * @param testCases the tests of the reduced suite
+     * @param originalTests the number of tests before reduction
+     * @param faults the number of faults
+     * @param classes the number of fault classes after reduction
+     */
+    private SuiteReduction(List<TestCase> testCases, int originalTests, int faults, int classes) {
+        this.testCases = testCases;
+        this.originalTests = originalTests;
+        this.faults = faults;
+        this.classes = classes;
+    }
+
+    /**
+     * Reduces the given suite for orderings of the given size.
+     *
+     * @param cases the suite to reduce
+     * @param size the number of tests in each ordering
+     * @return reduction
+     */
+    public static SuiteReduction reduce(List<TestCase> cases, int size) {
+        if (cases.isEmpty())
+            throw new IllegalArgumentException("cannot reduce an empty suite");
+        int faults = cases.get(0).getNumOfFaults();
+        if (cases.get(0).getWeights() != null)
+            throw new IllegalArgumentException("suite is already reduced");
+
+        List<TestCase> kept = undominated(cases);
+        if (kept.size() < size)
+            kept = cases;
+
+        // Each fault's column of the matrix, as a bitset over the kept tests.
+        int words = APFD.words(kept.size());
+        long[][] columns = new long[faults][words];
+        for (int t = 0; t < kept.size(); t++) {
+            long[] row = kept.get(t).getFaultRow();
+            for (int w = 0; w < row.length; w++) {
+                for (long bits = row[w]; bits != 0; bits &= bits - 1)
+                    columns[(w << 6) + Long.numberOfTrailingZeros(bits)][t >>> 6] |= 1L << t;
+            }
+        }
+
+        Map<LongBuffer, Integer> classOf = new HashMap<>();
+        int[] fault = new int[faults];
+        int[] weights = new int[faults];
+        for (int f = 0; f < faults; f++) {
+            Integer c = classOf.get(LongBuffer.wrap(columns[f]));
+            if (c == null) {
+                c = classOf.size();
+                classOf.put(LongBuffer.wrap(columns[f]), c);
+            }
+            fault[f] = c;
+            weights[c]++;
+        }
+
+        int classes = classOf.size();
+        if (classes == faults)
+            return new SuiteReduction(kept, cases.size(), faults, classes);
+
+        int[] classWeights = new int[classes];
+        System.arraycopy(weights, 0, classWeights, 0, classes);
+        List<TestCase> reduced = new ArrayList<>(kept.size());
+        for (TestCase test : kept) {
+            long[] row = test.getFaultRow();
+            long[] classRow = new long[APFD.words(classes)];
+            for (int w = 0; w < row.length; w++) {
+                for (long bits = row[w]; bits != 0; bits &= bits - 1) {
+                    int c = fault[(w << 6) + Long.numberOfTrailingZeros(bits)];
+                    classRow[c >>> 6] |= 1L << c;
+                }
+            }
+            reduced.add(new TestCase(test.getTestName(), classRow, faults, classWeights));
+        }
+        return new SuiteReduction(reduced, cases.size(), faults, classes);
+    }
+
+    /**
+     * Returns the tests of the given suite whose faults are not a strict
+     * subset of any other test's, in their original order.
+     *
+     * @param cases the suite
+     * @return undominated tests
+     */
+    private static List<TestCase> undominated(List<TestCase> cases) {
+        List<TestCase> kept = new ArrayList<>();
+        for (TestCase test : cases) {
+            boolean dominated = false;
+            for (TestCase other : cases) {
+                if (other != test && dominates(other.getFaultRow(), test.getFaultRow())) {
+                    dominated = true;
+                    break;
+                }
+            }
+            if (!dominated)
+                kept.add(test);
+        }
+        return kept;
+    }
+
+    /**
+     * Returns whether the first row's faults are a strict superset of the
+     * second's.
+     *
+     * @param first a fault matrix row
+     * @param second another fault matrix row
+     * @return true if first dominates second
+     */
+    private static boolean dominates(long[] first, long[] second) {
+        boolean strict = false;
+        for (int w = 0; w < first.length; w++) {
+            if ((second[w] & ~first[w]) != 0)
+                return false;
+            if (first[w] != second[w])
+                strict = true;
+        }
+        return strict;
+    }
+
+    /**
+     * Returns the tests of the reduced suite.
+     *
+     * @return testCases
+     */
+    public List<TestCase> getTestCases() {
+        return testCases;
+    }
+
+    /**
+     * Returns the number of tests before reduction.
+     *
+     * @return originalTests
+     */
+    public int getOriginalTests() {
+        return originalTests;
+    }
+
+    /**
+     * Returns the number of faults.
+     *
+     * @return faults
+     */
+    public int getFaults() {
+        return faults;
+    }
+
+    /**
+     * Returns the number of fault classes after reduction.
+     *
+     * @return classes
+     */
+    public int getClasses() {
+        return classes;
+    }
+
+    @Override
+    public String toString() {
+        long before = (long) originalTests * faults;
+        long after = (long) testCases.size() * classes;
+        return "Reduced " + originalTests + " tests to " + testCases.size() + ", "
+                + faults + " faults to " + classes + " classes ("
+                + Math.round(100.0 * (before - after) / Math.max(1, before)) + "% smaller matrix).";
+    }
+}
@@ -5,62 +5,190 @@ import java.util.*;
 /**
  * The chromosome used for test case prioritisation. Each chromosome is a
  * permutation of tests in the test suite being examined, being a set of the
- * tests performed in the specific order.
+ * tests performed in the specific order. The tests are held as their indices
+ * in the suite, along with a bitset of the tests included so that uniqueness
+ * can be checked in constant time.
  *
  * @author Aidan O'Grady
  * @since 0.1
  */
 public class TCChromosome implements Comparable<TCChromosome> {
     /**
-     * Random generator to ensure the chaos required.
+     * The test suite the tests of this chromosome are taken from.
      */
-    private static final Random RAND = new Random();
+    private final List<TestCase> suite;
 
     /**
-     * The test cases in the order of being executed. It is important to note
-     * that uniqueness and order is required.
+     * The indices in the suite of the test cases in the order of being
+     * executed. It is important to note that uniqueness and order is required.
      */
-    private List<TestCase> candidate;
+    private final int[] genes;
+
+    /**
+     * The tests of the suite in this chromosome, as a bitset over suite
+     * indices.
+     */
+    private final long[] members;
 
     /**
      * The fitness of this candidate solution.
      */
     private double fitness;
 
+    /**
+     * Where each fault is detected in the candidate, built on first use.
+     */
+    private APFD.Detections detections;
+
+    /**
+     * The cache of fitnesses consulted before evaluating this chromosome and
+     * those derived from it, or null if fitnesses are not cached.
+     */
+    private final FitnessCache cache;
+
+    /**
+     * The hash of the genes in the cache, once hashed is set. Chromosomes
+     * derived by replacing or swapping tests roll their parent's hash forward
+     * rather than hashing their genes afresh.
+     */
+    private long hash;
+
+    /**
+     * Whether hash holds the hash of the genes. It is set after hash is
+     * written, so parents shared by threads breeding in parallel can be
+     * hashed by whichever thread needs them first.
+     */
+    private volatile boolean hashed;
+
     /**
      * Constructor.
      *
-     * @param candidate the set of tests in this solution.
+     * @param suite the test suite the tests are taken from
+     * @param genes the indices in the suite of the tests in this solution
      */
-    public TCChromosome(List<TestCase> candidate) {
-        this.candidate = candidate;
-        fitness = calculateFitness();
+    public TCChromosome(List<TestCase> suite, int[] genes) {
+        this(suite, genes, (FitnessCache) null);
     }
 
     /**
-     * Calculates the fitness of this solution.
+     * Constructor, looking the fitness up in the given cache before
+     * evaluating it.
      *
-     * @return fitness
+     * @param suite the test suite the tests are taken from
+     * @param genes the indices in the suite of the tests in this solution
+     * @param cache the cache of fitnesses, or null to always evaluate
      */
-    private double calculateFitness() {
-        double fitness = 1.0;
+    public TCChromosome(List<TestCase> suite, int[] genes, FitnessCache cache) {
+        this(suite, genes, cache, Double.NaN);
+        fitness = calculateFitness(null);
+    }
 
-        int faults = candidate.get(0).getNumOfFaults();
+    /**
+     * Constructor for a solution whose fitness is already known.
+     *
+     * @param suite the test suite the tests are taken from
+     * @param genes the indices in the suite of the tests in this solution
+     * @param cache the cache of fitnesses, or null to always evaluate
+     * @param fitness the fitness of the solution
+     */
+    TCChromosome(List<TestCase> suite, int[] genes, FitnessCache cache, double fitness) {
+        this.suite = suite;
+        this.genes = genes;
+        this.members = new long[APFD.words(suite.size())];
+        for (int gene : genes)
+            members[gene >>> 6] |= 1L << gene;
+        this.cache = cache;
+        this.fitness = fitness;
+    }
 
-        double sum = 0;
-        for (int i = 1; i <= faults; i++) {
-            int fit = 1;
-            for (TestCase tc : candidate) {
-                if (tc.getFaults().contains(i)) {
-                    break;
-                }
-                fit++;
-            }
-            sum += fit;
+    /**
+     * Constructs a blank chromosome of the given size, to be filled in by a
+     * pooled population. Pooled chromosomes are recycled in place, so they
+     * are only handed out by a population until it overwrites them.
+     *
+     * @param suite the test suite the tests are taken from
+     * @param size the number of tests in the solution
+     * @param cache the cache of fitnesses, or null to always evaluate
+     */
+    TCChromosome(List<TestCase> suite, int size, FitnessCache cache) {
+        this.suite = suite;
+        this.genes = new int[size];
+        this.members = new long[APFD.words(suite.size())];
+        this.cache = cache;
+    }
+
+    /**
+     * Calculates the fitness of this solution, from the cache if it holds it.
+     *
+     * @param detected scratch space of one fault matrix row, or null to
+     * allocate it
+     * @return fitness
+     */
+    private double calculateFitness(long[] detected) {
+        if (cache == null)
+            return detected == null ? APFD.fitness(suite, genes) : APFD.fitness(suite, genes, detected);
+
+        long hash = hash();
+        double fitness = cache.get(hash, genes);
+        if (Double.isNaN(fitness)) {
+            fitness = detected == null ? APFD.fitness(suite, genes) : APFD.fitness(suite, genes, detected);
+            cache.put(hash, genes, fitness);
         }
-        fitness -= sum / (faults * candidate.size());
-        fitness += 1.0 / (2 * candidate.size());
-        return 1.0 - fitness;
+        return fitness;
+    }
+
+    /**
+     * Returns the hash of the genes in the cache, hashing them if no hash has
+     * been rolled forward.
+     *
+     * @return hash
+     */
+    private long hash() {
+        if (!hashed)
+            setHash(FitnessCache.hash(genes));
+        return hash;
+    }
+
+    /**
+     * Sets the hash of the genes in the cache.
+     *
+     * @param hash the hash of the genes
+     */
+    private void setHash(long hash) {
+        this.hash = hash;
+        this.hashed = true;
+    }
+
+    /**
+     * Constructs a chromosome derived from another by replacing or swapping
+     * tests, whose hash has been rolled forward from the other's, looking
+     * its fitness up in the cache before evaluating it.
+     *
+     * @param suite the test suite the tests are taken from
+     * @param genes the indices in the suite of the tests in this solution
+     * @param cache the cache of fitnesses
+     * @param hash the hash of the genes
+     * @return chromosome
+     */
+    private static TCChromosome derived(List<TestCase> suite, int[] genes, FitnessCache cache, long hash) {
+        TCChromosome c = new TCChromosome(suite, genes, cache, Double.NaN);
+        c.setHash(hash);
+        c.fitness = c.calculateFitness(null);
+        return c;
+    }
+
+    /**
+     * Returns the hash of an ordering after two of its tests are swapped.
+     *
+     * @param hash the hash of the ordering
+     * @param genes the ordering, before the swap
+     * @param i the position of one test
+     * @param j the position of the other
+     * @return hash after the swap
+     */
+    private static long reswap(long hash, int[] genes, int i, int j) {
+        hash = FitnessCache.rehash(hash, i, genes[i], genes[j]);
+        return FitnessCache.rehash(hash, j, genes[j], genes[i]);
     }
 
     /**
@@ -69,7 +197,55 @@ public class TCChromosome implements Comparable<TCChromosome> {
      * @return candidate
      */
     public List<TestCase> getCandidate() {
-        return candidate;
+        return new AbstractList<TestCase>() {
+            @Override
+            public TestCase get(int index) {
+                return suite.get(genes[index]);
+            }
+
+            @Override
+            public int size() {
+                return genes.length;
+            }
+        };
+    }
+
+    /**
+     * Returns the test suite the tests of this chromosome are taken from.
+     *
+     * @return suite
+     */
+    public List<TestCase> getSuite() {
+        return suite;
+    }
+
+    /**
+     * Returns the indices in the suite of the tests of this chromosome. The
+     * array must not be modified.
+     *
+     * @return genes
+     */
+    public int[] getGenes() {
+        return genes;
+    }
+
+    /**
+     * Returns the number of tests in this chromosome.
+     *
+     * @return size
+     */
+    public int size() {
+        return genes.length;
+    }
+
+    /**
+     * Returns whether the test at the given suite index is in this chromosome.
+     *
+     * @param gene the index of the test in the suite
+     * @return true if the test is in this chromosome
+     */
+    public boolean contains(int gene) {
+        return (members[gene >>> 6] & (1L << gene)) != 0;
     }
 
     /**
@@ -81,6 +257,19 @@ public class TCChromosome implements Comparable<TCChromosome> {
         return fitness;
     }
 
+    /**
+     * Returns an independent copy of this chromosome with the same fitness,
+     * which stays valid after a pooled chromosome is overwritten.
+     *
+     * @return copy
+     */
+    public TCChromosome copy() {
+        TCChromosome copy = new TCChromosome(suite, genes.clone(), cache, fitness);
+        if (hashed)
+            copy.setHash(hash);
+        return copy;
+    }
+
     /**
      * Performs a crossover, combining this and the given parent. The crossover
      * is based on the given offset, determining where the split occers.
@@ -90,91 +279,331 @@ public class TCChromosome implements Comparable<TCChromosome> {
      * @return chromosome produced by parents
      */
     public TCChromosome crossover(TCChromosome parent, int offset) {
+        return crossover(parent, Crossover.ONE_POINT, 0, offset);
+    }
 
-        List<TestCase> newCandidate = new ArrayList<>(candidate.subList(0, offset));
-        List<TestCase> parentCandidate = parent.getCandidate();
+    /**
+     * Performs a crossover with the given operator, keeping this parent's
+     * tests between the cuts.
+     *
+     * @param parent the other parent to produce offspring
+     * @param operator the crossover operator
+     * @param from the first place between the cuts
+     * @param to the place after the last between the cuts
+     * @return chromosome produced by parents
+     */
+    TCChromosome crossover(TCChromosome parent, Crossover operator, int from, int to) {
+        int[] child = new int[genes.length];
+        operator.cross(genes, parent.genes, from, to, child, suite.size());
+        return new TCChromosome(suite, child, cache);
+    }
 
-        int i = 0;
-        while (newCandidate.size() < parentCandidate.size() && i < parentCandidate.size()) {
-            TestCase test = parentCandidate.get(i);
+    /**
+     * Overwrites this pooled chromosome with a copy of the given one.
+     *
+     * @param other the chromosome to copy
+     */
+    void copyFrom(TCChromosome other) {
+        System.arraycopy(other.genes, 0, genes, 0, genes.length);
+        System.arraycopy(other.members, 0, members, 0, members.length);
+        fitness = other.fitness;
+        hash = other.hash;
+        hashed = other.hashed;
+        detections = null;
+    }
 
-            if (!newCandidate.contains(test))
-                newCandidate.add(test);
-            i++;
-        }
+    /**
+     * Overwrites this pooled chromosome with the offspring of a crossover of
+     * the given parents. The fitness is left stale until evaluated.
+     *
+     * @param first the parent whose tests are kept between the cuts
+     * @param second the other parent
+     * @param operator the crossover operator
+     * @param from the first place between the cuts
+     * @param to the place after the last between the cuts
+     */
+    void crossoverFrom(TCChromosome first, TCChromosome second, Crossover operator, int from, int to) {
+        operator.cross(first.genes, second.genes, from, to, genes, suite.size());
+        updateMembers();
+        hashed = false;
+    }
 
-        if (newCandidate.size() != candidate.size()) {
-            System.out.println("Crossover isn't working!");
-            return null;
+    /**
+     * Gives this pooled chromosome the same minor, random alteration as
+     * mutate, in place. The fitness is left stale until evaluated.
+     *
+     * @param testCases the test cases to take the replacement from
+     * @param rng the random stream to alter with
+     */
+    void mutateInPlace(List<TestCase> testCases, Rng rng) {
+        int i = rng.nextInt(genes.length - 1);
+        int n = testCases.size();
+        if (genes.length < n) {
+            int newTestCase = Sampler.nonMember(members, genes.length, n, rng);
+            members[genes[i] >>> 6] &= ~(1L << genes[i]);
+            members[newTestCase >>> 6] |= 1L << newTestCase;
+            if (hashed)
+                hash = FitnessCache.rehash(hash, i, genes[i], newTestCase);
+            genes[i] = newTestCase;
+        } else {
+            int j = rng.nextInt(genes.length);
+            if (hashed)
+                hash = reswap(hash, genes, i, j);
+            swap(genes, i, j);
         }
-        return new TCChromosome(new ArrayList<>(newCandidate));
+        detections = null;
+    }
+
+    /**
+     * Recalculates the fitness of this pooled chromosome after it has been
+     * altered in place.
+     *
+     * @param detected scratch space of one fault matrix row
+     */
+    void evaluate(long[] detected) {
+        fitness = calculateFitness(detected);
+    }
+
+    /**
+     * Rebuilds the membership bitset after the genes have been altered.
+     */
+    private void updateMembers() {
+        Arrays.fill(members, 0L);
+        for (int gene : genes)
+            members[gene >>> 6] |= 1L << gene;
+        detections = null;
     }
 
     /**
      * Returns a new version of this solution that has been given a minor,
-     * random alteration to its data.
+     * random alteration to its data: a test is replaced by one drawn
+     * uniformly from the tests not in this chromosome, or swapped with
+     * another if it holds the whole suite.
      *
+     * @param testCases the test cases to take the replacement from
+     * @param rng the random stream to alter with
      * @return randomly altered chromosome
      */
-    public TCChromosome mutate(List<TestCase> testCases) {
-        List<TestCase> copy = new ArrayList<>(candidate);
+    public TCChromosome mutate(List<TestCase> testCases, Rng rng) {
+        int[] copy = genes.clone();
+        long hash = cache != null ? hash() : 0;
 
-        int i = RAND.nextInt(copy.size() - 1);
-        TestCase newTestCase = testCases.get(RAND.nextInt(testCases.size()));
-        while (copy.contains(newTestCase))
-            newTestCase = testCases.get(RAND.nextInt(testCases.size()));
-        copy.set(i, newTestCase);
+        int i = rng.nextInt(copy.length - 1);
+        if (copy.length < testCases.size()) {
+            int gene = Sampler.nonMember(members, copy.length, testCases.size(), rng);
+            hash = FitnessCache.rehash(hash, i, copy[i], gene);
+            copy[i] = gene;
+        } else {
+            int j = rng.nextInt(copy.length);
+            hash = reswap(hash, copy, i, j);
+            swap(copy, i, j);
+        }
+
+        return cache != null ? derived(suite, copy, cache, hash) : new TCChromosome(suite, copy, null);
+    }
 
-        return new TCChromosome(copy);
+    /**
+     * Swaps two tests of an ordering, which is how a chromosome holding the
+     * whole suite is mutated, having no test left to replace one with.
+     *
+     * @param genes the ordering of test indices
+     * @param i the position of one test
+     * @param j the position of the other
+     */
+    private static void swap(int[] genes, int i, int j) {
+        int t = genes[i];
+        genes[i] = genes[j];
+        genes[j] = t;
     }
 
     /**
-     * Returns the neighbouring chromosomes.
+     * Returns the neighbouring chromosomes. The test cases must be the suite
+     * this chromosome is taken from.
      *
      * @return neighbours
      */
     public List<TCChromosome> getNeighbours(List<TestCase> testCases, int steps) {
         List<TCChromosome> neighbours = new ArrayList<>();
 
-        for (int i = 0; i < candidate.size(); i++) {
+        for (int i = 0; i < genes.length; i++) {
             for (int j = 1; j <= steps; j++) {
-                List<TestCase> copy = new ArrayList<>(candidate);
-                int index = testCases.indexOf(candidate.get(i));
+                int[] copy = genes.clone();
+                int index = genes[i];
 
-                TestCase tc = testCases.get(Math.max(0, (index - j) % testCases.size()));
-                copy.set(i, tc);
-                neighbours.add(new TCChromosome(copy));
+                copy[i] = Math.max(0, (index - j) % testCases.size());
+                neighbours.add(neighbour(copy, i, index));
 
-                copy = new ArrayList<>(candidate);
+                copy = genes.clone();
 
-                tc = testCases.get((index + j) % testCases.size());
-                copy.set(i, tc);
-                neighbours.add(new TCChromosome(copy));
+                copy[i] = (index + j) % testCases.size();
+                neighbours.add(neighbour(copy, i, index));
             }
         }
         return neighbours;
     }
 
+    /**
+     * Constructs a neighbour differing from this chromosome in one test,
+     * rolling this chromosome's hash forward if fitnesses are cached.
+     *
+     * @param copy the neighbour's genes
+     * @param i the position of the test replaced
+     * @param gene the index of the test replaced
+     * @return neighbour
+     */
+    private TCChromosome neighbour(int[] copy, int i, int gene) {
+        if (cache == null)
+            return new TCChromosome(suite, copy, null);
+        return derived(suite, copy, cache, FitnessCache.rehash(hash(), i, gene, copy[i]));
+    }
+
+    /**
+     * Returns the best of the neighbouring chromosomes that improves upon this
+     * one, considering the neighbours in the same order as getNeighbours. Each
+     * neighbour is scored incrementally from this chromosome's detections, and
+     * only the winning neighbour is built, taking the fitness it was scored
+     * with rather than being evaluated again.
+     *
+     * @param testCases the test cases to take replacements from, being the
+     * suite this chromosome is taken from
+     * @param steps the number of steps either side of each test to consider
+     * @return best improving neighbour, or null if there is none
+     */
+    public TCChromosome getBestNeighbour(List<TestCase> testCases, int steps) {
+        if (detections == null)
+            detections = APFD.detections(getCandidate());
+
+        double bestFitness = fitness;
+        int bestIndex = -1;
+        int bestGene = -1;
+        for (int i = 0; i < genes.length; i++) {
+            int index = genes[i];
+            for (int j = 1; j <= steps; j++) {
+                int gene = Math.max(0, (index - j) % testCases.size());
+                double f = detections.fitnessWith(i, testCases.get(gene));
+                if (f < bestFitness) {
+                    bestFitness = f;
+                    bestIndex = i;
+                    bestGene = gene;
+                }
+
+                gene = (index + j) % testCases.size();
+                f = detections.fitnessWith(i, testCases.get(gene));
+                if (f < bestFitness) {
+                    bestFitness = f;
+                    bestIndex = i;
+                    bestGene = gene;
+                }
+            }
+        }
+
+        if (bestGene < 0)
+            return null;
+        int[] copy = genes.clone();
+        copy[bestIndex] = bestGene;
+        TCChromosome best = new TCChromosome(suite, copy, cache, bestFitness);
+        if (hashed)
+            best.setHash(FitnessCache.rehash(hash, bestIndex, genes[bestIndex], bestGene));
+        return best;
+    }
+
     /**
      * Generates a random chromosome based on the number of cases to include and
      * the test suite to take from.
      *
      * @param size the number of cases to include
      * @param cases the cases to select from
+     * @param rng the random stream to select with
      * @return random chromosome
      */
-    public static TCChromosome generateChromosome(int size, List<TestCase> cases) {
-        List<TestCase> newCandidate = new ArrayList<>();
-        for (int i = 0; i < size; i++) {
-            TestCase testCase = cases.get(RAND.nextInt(cases.size()));
-            if (newCandidate.contains(testCase))
-                i--;
-            else
-                newCandidate.add(testCase);
-        }
-        return new TCChromosome(newCandidate);
+    public static TCChromosome generateChromosome(int size, List<TestCase> cases, Rng rng) {
+        return generateChromosome(size, cases, rng, null);
+    }
+
+    /**
+     * Generates a random chromosome based on the number of cases to include and
+     * the test suite to take from, looking its fitness up in the given cache.
+     * Chromosomes derived from it share the cache.
+     *
+     * @param size the number of cases to include
+     * @param cases the cases to select from
+     * @param rng the random stream to select with
+     * @param cache the cache of fitnesses, or null to always evaluate
+     * @return random chromosome
+     */
+    public static TCChromosome generateChromosome(int size, List<TestCase> cases, Rng rng, FitnessCache cache) {
+        int[] newCandidate = new int[size];
+        Sampler.sample(size, cases.size(), rng, newCandidate);
+        return new TCChromosome(cases, newCandidate, cache);
     }
 
+    /**
+     * Generates a chromosome by additional greedy construction: each test
+     * added is one detecting the most faults not yet detected by the tests
+     * before it, counted by popcounts over the fault matrix rows. Once every
+     * fault that can be detected has been, the detected faults are forgotten
+     * and construction carries on as if from the start.
+     *
+     * The alpha gives randomised variants: at each step a test is drawn
+     * uniformly from those whose gain is within alpha of the way from the
+     * best gain to the worst. An alpha of 0 only draws between tests tied
+     * for the best gain, and an alpha of 1 draws from every test left.
+     *
+     * @param size the number of cases to include
+     * @param cases the cases to select from
+     * @param alpha how far from greedy each choice may be, from 0 to 1
+     * @param rng the random stream to break ties with
+     * @param cache the cache of fitnesses, or null to always evaluate
+     * @return greedy chromosome
+     */
+    public static TCChromosome generateGreedy(int size, List<TestCase> cases, double alpha, Rng rng,
+                                              FitnessCache cache) {
+        int n = cases.size();
+        int[] weights = cases.get(0).getWeights();
+        long[] detected = new long[cases.get(0).getFaultRow().length];
+        long[] chosen = new long[APFD.words(n)];
+        int[] gains = new int[n];
+        int[] candidates = new int[n];
+        int[] newCandidate = new int[size];
+
+        for (int p = 0; p < size; p++) {
+            int max;
+            int min;
+            for (boolean reset = false; ; reset = true) {
+                max = 0;
+                min = Integer.MAX_VALUE;
+                for (int t = 0; t < n; t++) {
+                    if ((chosen[t >>> 6] & (1L << t)) != 0)
+                        continue;
+                    long[] row = cases.get(t).getFaultRow();
+                    int gain = 0;
+                    for (int w = 0; w < detected.length; w++)
+                        gain += APFD.count(row[w] & ~detected[w], w, weights);
+                    gains[t] = gain;
+                    max = Math.max(max, gain);
+                    min = Math.min(min, gain);
+                }
+                if (max > 0 || reset)
+                    break;
+                Arrays.fill(detected, 0L);
+            }
+
+            double threshold = max - alpha * (max - min);
+            int count = 0;
+            for (int t = 0; t < n; t++) {
+                if ((chosen[t >>> 6] & (1L << t)) == 0 && gains[t] >= threshold)
+                    candidates[count++] = t;
+            }
+
+            int testCase = candidates[rng.nextInt(count)];
+            newCandidate[p] = testCase;
+            chosen[testCase >>> 6] |= 1L << testCase;
+            long[] row = cases.get(testCase).getFaultRow();
+            for (int w = 0; w < detected.length; w++)
+                detected[w] |= row[w];
+        }
+        return new TCChromosome(cases, newCandidate, cache);
+    }
 
     @Override
     public int compareTo(TCChromosome o) {
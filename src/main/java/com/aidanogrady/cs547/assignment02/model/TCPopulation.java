@@ -1,6 +1,9 @@
 package com.aidanogrady.cs547.assignment02.model;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * The population is a set of chromosomes either randomly created or spawned by
@@ -36,6 +39,11 @@ public class TCPopulation {
      */
     private double crossover;
 
+    /**
+     * The operator parents are crossed over with.
+     */
+    private final Crossover operator;
+
     /**
      * The probability of mutation occurring.
      */
@@ -54,34 +62,231 @@ public class TCPopulation {
     /**
      * RNG for mutation, crossover, etc.
      */
-    private Random random;
+    private final Rng random;
+
+    /**
+     * The cache of fitnesses shared by the chromosomes of this population, or
+     * null if fitnesses are not cached.
+     */
+    private final FitnessCache cache;
+
+    /**
+     * The number of chromosomes whose fitness has been evaluated, including
+     * those looked up in the cache.
+     */
+    private final LongAdder evaluations = new LongAdder();
+
+    /**
+     * The number of pairs of offspring bred by each parallel task.
+     */
+    private static final int CHUNK = 32;
+
+    /**
+     * The pool generations are bred on in parallel, or null if generations
+     * are bred on the calling thread.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * The generation being bred into when generations are pooled, or null if
+     * each generation is newly allocated.
+     */
+    private TCChromosome[] nextGen;
+
+    /**
+     * The generation held by the population when generations are pooled.
+     */
+    private TCChromosome[] currentGen;
+
+    /**
+     * The list view of the pooled generation being bred into, the population
+     * being the view of the other.
+     */
+    private List<TCChromosome> nextView;
+
+    /**
+     * Where the daughter of the last pair goes in an odd sized pooled
+     * population.
+     */
+    private TCChromosome spare;
+
+    /**
+     * Scratch space for merging when sorting a pooled generation.
+     */
+    private TCChromosome[] sortBuffer;
+
+    /**
+     * Scratch fault matrix row for evaluating pooled chromosomes.
+     */
+    private long[] detected;
 
     /**
      * Constructor.
      *
      * @param properties the configuration of this population
      * @param testCases the test cases to be used in generation chromosomes
+     * @param random the random stream of this population
      */
-    public TCPopulation(Properties properties, List<TestCase> testCases) {
+    public TCPopulation(Properties properties, List<TestCase> testCases, Rng random) {
+        this(properties, testCases, random, null);
+    }
+
+    /**
+     * Constructor, restoring the population from a snapshot rather than
+     * generating it. The population carries on evolving from its random
+     * stream as it was, so it evolves exactly as the population the snapshot
+     * was taken of would have.
+     *
+     * @param properties the configuration of this population
+     * @param testCases the test cases the snapshot's population was evolved
+     * over
+     * @param snapshot the snapshot to restore
+     * @throws IllegalArgumentException if the snapshot is of a population
+     * of another size or suite
+     */
+    public TCPopulation(Properties properties, List<TestCase> testCases, PopulationSnapshot snapshot) {
+        this(properties, testCases, snapshot.getRng(), snapshot);
+    }
+
+    /**
+     * Constructor, generating the population or restoring it from a snapshot.
+     *
+     * @param properties the configuration of this population
+     * @param testCases the test cases to be used in generation chromosomes
+     * @param random the random stream of this population
+     * @param snapshot the snapshot to restore, or null to generate
+     */
+    private TCPopulation(Properties properties, List<TestCase> testCases, Rng random,
+                         PopulationSnapshot snapshot) {
         this.testCases = testCases;
         this.size = Integer.parseInt(properties.getProperty("ga.population"));
         this.elitism = Double.parseDouble(properties.getProperty("ga.elitism"));
         this.crossover = Double.parseDouble(properties.getProperty("ga.crossover"));
+        this.operator = Crossover.fromProperties(properties);
         this.mutation = Double.parseDouble(properties.getProperty("ga.mutation"));
         this.tournament = Integer.parseInt(properties.getProperty("ga.tournament"));
         this.setSize = Integer.parseInt(properties.getProperty("size"));
 
+        int threads = Integer.parseInt(properties.getProperty("ga.threads", "1"));
+        this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        this.random = random;
+        this.cache = FitnessCache.fromProperties(properties);
+
+        double greedy = Double.parseDouble(properties.getProperty("greedy.fraction", "0"));
+        double alpha = Double.parseDouble(properties.getProperty("greedy.alpha", "0"));
+        int seeded = (int) Math.round(size * greedy);
+
         this.population = new ArrayList<>();
+        if (snapshot != null) {
+            restore(snapshot);
+        } else {
+            for (int i = 0; i < size; i++) {
+                if (i < seeded)
+                    population.add(TCChromosome.generateGreedy(setSize, testCases, alpha, random, cache));
+                else
+                    population.add(TCChromosome.generateChromosome(setSize, testCases, random, cache));
+            }
+            evaluations.add(size);
+            Collections.sort(population);
+        }
+
+        if (Boolean.parseBoolean(properties.getProperty("ga.pooled", "false"))) {
+            if (pool != null)
+                throw new IllegalArgumentException("ga.pooled cannot be combined with ga.threads above 1");
+            currentGen = population.toArray(new TCChromosome[size]);
+            nextGen = new TCChromosome[size];
+            for (int i = 0; i < size; i++)
+                nextGen[i] = new TCChromosome(testCases, setSize, cache);
+            population = Arrays.asList(currentGen);
+            nextView = Arrays.asList(nextGen);
+            spare = new TCChromosome(testCases, setSize, cache);
+            sortBuffer = new TCChromosome[size];
+            detected = new long[testCases.get(0).getFaultRow().length];
+        }
+    }
+
+    /**
+     * Fills the population with the chromosomes of a snapshot, in the order
+     * they were in, as evolving in parallel leaves the population only
+     * partly sorted.
+     *
+     * @param snapshot the snapshot to restore
+     */
+    private void restore(PopulationSnapshot snapshot) {
+        if (snapshot.getTests() != testCases.size()
+                || snapshot.getSuite() != PopulationSnapshot.fingerprint(testCases))
+            throw new IllegalArgumentException("snapshot was taken over another suite");
+        if (snapshot.getSize() != size)
+            throw new IllegalArgumentException("snapshot has " + snapshot.getSize()
+                    + " chromosomes but ga.population is " + size);
+
         for (int i = 0; i < size; i++) {
-            population.add(TCChromosome.generateChromosome(setSize, testCases));
+            int[] genes = snapshot.getGenes(i);
+            if (genes.length != setSize)
+                throw new IllegalArgumentException("snapshot has " + genes.length
+                        + " tests per chromosome but size is " + setSize);
+            for (int gene : genes) {
+                if (gene < 0 || gene >= testCases.size())
+                    throw new IllegalArgumentException("snapshot has invalid test " + gene);
+            }
+            population.add(new TCChromosome(testCases, genes.clone(), cache, snapshot.getFitness(i)));
         }
-        Collections.sort(population);
+        evaluations.add(snapshot.getEvaluations());
+    }
 
-        random = new Random();
+    /**
+     * Takes a snapshot of this population between generations, from which it
+     * can be restored. The chromosomes are copied, so the snapshot is safe to
+     * hand to another thread as the population evolves.
+     *
+     * @param generations the number of generations the search has gone through
+     * @param stalls the number of generations the search's best has stalled for
+     * @return snapshot
+     */
+    public PopulationSnapshot snapshot(int generations, int stalls) {
+        int[][] genes = new int[size][];
+        double[] fitness = new double[size];
+        for (int i = 0; i < size; i++) {
+            TCChromosome c = population.get(i);
+            genes[i] = c.getGenes().clone();
+            fitness[i] = c.getFitness();
+        }
+        return new PopulationSnapshot(testCases.size(), PopulationSnapshot.fingerprint(testCases), genes,
+                fitness, random.getSeed(), random.getGamma(), getEvaluations(), generations, stalls);
     }
 
     /**
-     * Returns the chromosome with the lowest fitness.
+     * Releases the threads used to breed generations in parallel, if any.
+     */
+    public void shutdown() {
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    /**
+     * Returns the cache of fitnesses shared by the chromosomes of this
+     * population.
+     *
+     * @return cache, or null if fitnesses are not cached
+     */
+    public FitnessCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Returns the number of chromosomes whose fitness has been evaluated so
+     * far, including those looked up in the cache.
+     *
+     * @return evaluations
+     */
+    public long getEvaluations() {
+        return evaluations.sum();
+    }
+
+    /**
+     * Returns the chromosome with the lowest fitness. When generations are
+     * pooled, the chromosome is recycled by the evolve after next, so it must
+     * be copied to be kept longer.
      *
      * @return best solution thus far.
      */
@@ -110,61 +315,430 @@ public class TCPopulation {
         return population.get(size - 1);
     }
 
+    /**
+     * Returns copies of the given number of fittest chromosomes, fittest
+     * first, which are safe to hand to another population on another thread.
+     *
+     * @param n the number of chromosomes to copy
+     * @return copies of the fittest chromosomes
+     */
+    public List<TCChromosome> emigrants(int n) {
+        sortAll();
+        List<TCChromosome> emigrants = new ArrayList<>(n);
+        for (int i = 0; i < Math.min(n, size); i++) {
+            TCChromosome c = population.get(i);
+            emigrants.add(new TCChromosome(testCases, c.getGenes().clone(), null, c.getFitness()));
+        }
+        return emigrants;
+    }
+
+    /**
+     * Replaces the least fit chromosomes of this population with the given
+     * migrants from another population. When generations are pooled, the
+     * migrants are copied into the recycled chromosomes they replace.
+     *
+     * @param migrants the chromosomes to take in
+     */
+    public void immigrate(List<TCChromosome> migrants) {
+        sortAll();
+        int n = Math.min(migrants.size(), size);
+        for (int i = 0; i < n; i++) {
+            TCChromosome migrant = migrants.get(i);
+            int slot = size - n + i;
+            if (currentGen != null)
+                currentGen[slot].copyFrom(migrant);
+            else
+                population.set(slot, new TCChromosome(testCases, migrant.getGenes(), cache, migrant.getFitness()));
+        }
+        sortAll();
+    }
+
+    /**
+     * Sorts the whole population, which evolving in parallel leaves sorted
+     * only as far as the elite.
+     */
+    private void sortAll() {
+        if (currentGen != null)
+            mergeSort(currentGen, sortBuffer);
+        else
+            Collections.sort(population);
+    }
+
     /**
      * Evolves the current population into a new one with better fitness.
      */
     public void evolve() {
         int eliteSize = (int) Math.round(size * elitism);
 
-        List<TCChromosome> nextGen = new ArrayList<>();
+        if (pool != null) {
+            evolveInParallel(eliteSize);
+            return;
+        }
+        if (nextGen != null) {
+            evolvePooled(eliteSize);
+            return;
+        }
+
+        TCChromosome[] nextGen = new TCChromosome[size];
+        for (int i = 0; i < size; i += 2) {
+            breed(random, eliteSize, nextGen, i);
+        }
+        population = new ArrayList<>(Arrays.asList(nextGen));
+        Collections.sort(population);
+    }
+
+    /**
+     * Evolves the current population on the pool. Offspring are bred and
+     * scored in chunks, each chunk drawing from its own stream split from this
+     * population's, so the result does not depend on scheduling. As
+     * only the elite are selected as parents, the next generation is not
+     * sorted in full: the elite are selected and sorted in parallel, and the
+     * least fit chromosome is placed last.
+     *
+     * @param eliteSize the number of chromosomes parents are selected from
+     */
+    private void evolveInParallel(int eliteSize) {
+        TCChromosome[] nextGen = new TCChromosome[size];
+        Rng[] streams = new Rng[((size + 1) / 2 + CHUNK - 1) / CHUNK];
+        for (int i = 0; i < streams.length; i++)
+            streams[i] = random.split();
+        pool.invoke(new Breed(eliteSize, nextGen, streams, 0, streams.length));
+
+        // Each segment moves its own elite to its head, so the overall elite
+        // is found among the heads.
+        int elite = Math.min(Math.max(eliteSize, 1), size);
+        int segment = Math.max(CHUNK * 2, (size + pool.getParallelism() - 1) / pool.getParallelism());
+        int segments = (size + segment - 1) / segment;
+        pool.invoke(new SelectElite(nextGen, elite, segment, 0, segments));
+
+        List<Integer> heads = new ArrayList<>();
+        for (int from = 0; from < size; from += segment) {
+            for (int i = from; i < Math.min(size, from + elite); i++)
+                heads.add(i);
+        }
+        heads.sort(Comparator.comparing(i -> nextGen[i]));
+
+        boolean[] selected = new boolean[size];
+        List<TCChromosome> next = new ArrayList<>(size);
+        for (int i = 0; i < elite; i++) {
+            selected[heads.get(i)] = true;
+            next.add(nextGen[heads.get(i)]);
+        }
+
+        int worst = -1;
         for (int i = 0; i < size; i++) {
-            TCChromosome father = selectParent(eliteSize);
-            TCChromosome mother = selectParent(eliteSize);
+            if (selected[i])
+                continue;
+            if (worst < 0 || nextGen[i].getFitness() > next.get(worst).getFitness())
+                worst = next.size();
+            next.add(nextGen[i]);
+        }
+        if (worst >= 0)
+            Collections.swap(next, worst, size - 1);
+        population = next;
+    }
 
-            TCChromosome son;
-            TCChromosome daughter;
+    /**
+     * Evolves the current population by breeding into the spare generation
+     * buffer and swapping the two. Every offspring is written into a
+     * recycled chromosome, and the generation is sorted by a stable merge
+     * sort into a preallocated buffer, so nothing is allocated. The random
+     * draws and the order of the sorted generation are the same as when each
+     * generation is newly allocated, so the results are too. Caching
+     * fitnesses allocates an entry for each miss.
+     *
+     * @param eliteSize the number of chromosomes parents are selected from
+     */
+    private void evolvePooled(int eliteSize) {
+        for (int i = 0; i < size; i += 2) {
+            TCChromosome father = selectParent(random, eliteSize);
+            TCChromosome mother = selectParent(random, eliteSize);
 
-            if (random.nextDouble() < crossover) {
-                int offset = random.nextInt(mother.getCandidate().size());
-                son = father.crossover(mother, offset);
-                daughter = mother.crossover(father, offset);
+            TCChromosome son = nextGen[i];
+            TCChromosome daughter = i != (size - 1) ? nextGen[i + 1] : spare;
 
+            boolean crossed = random.nextDouble() < crossover;
+            if (crossed) {
+                int from = operator.drawFrom(random, mother.size());
+                int to = operator.drawTo(random, mother.size(), from);
+                son.crossoverFrom(father, mother, operator, from, to);
+                daughter.crossoverFrom(mother, father, operator, from, to);
             } else {
-                son = father;
-                daughter = mother;
+                son.copyFrom(father);
+                daughter.copyFrom(mother);
             }
 
-            if (random.nextDouble() < mutation) {
-                son = son.mutate(testCases);
-            }
+            boolean sonMutated = random.nextDouble() < mutation;
+            if (sonMutated)
+                son.mutateInPlace(testCases, random);
 
-            if (random.nextDouble() < mutation) {
-                daughter = daughter.mutate(testCases);
+            boolean daughterMutated = random.nextDouble() < mutation;
+            if (daughterMutated)
+                daughter.mutateInPlace(testCases, random);
+
+            if (crossed || sonMutated) {
+                son.evaluate(detected);
+                evaluations.increment();
+            }
+            if (crossed || daughterMutated) {
+                daughter.evaluate(detected);
+                evaluations.increment();
             }
+        }
+
+        TCChromosome[] gen = currentGen;
+        currentGen = nextGen;
+        nextGen = gen;
+        List<TCChromosome> view = population;
+        population = nextView;
+        nextView = view;
+        mergeSort(currentGen, sortBuffer);
+    }
 
-            nextGen.add(son);
-            if (i != (size - 1)) { // Handle odd size pop
-                nextGen.add(daughter);
-                i++;
+    /**
+     * Sorts the given chromosomes by fitness, keeping equally fit chromosomes
+     * in order, using a bottom up merge sort.
+     *
+     * @param a the chromosomes to sort
+     * @param buffer scratch space at least as long as a
+     */
+    private static void mergeSort(TCChromosome[] a, TCChromosome[] buffer) {
+        for (int width = 1; width < a.length; width *= 2) {
+            for (int lo = 0; lo < a.length - width; lo += 2 * width) {
+                int mid = lo + width;
+                int hi = Math.min(mid + width, a.length);
+                System.arraycopy(a, lo, buffer, lo, width);
+
+                int i = lo;
+                int j = mid;
+                int k = lo;
+                while (i < mid && j < hi)
+                    a[k++] = a[j].compareTo(buffer[i]) < 0 ? a[j++] : buffer[i++];
+                while (i < mid)
+                    a[k++] = buffer[i++];
             }
         }
-        population = nextGen;
-        Collections.sort(population);
+    }
+
+    /**
+     * Breeds a pair of offspring into the given generation. The daughter is
+     * dropped if the generation has an odd size and the son fills its last
+     * place.
+     *
+     * @param rng the random stream to breed with
+     * @param eliteSize the number of chromosomes parents are selected from
+     * @param nextGen the generation being bred
+     * @param i the place of the son in the generation
+     */
+    private void breed(Rng rng, int eliteSize, TCChromosome[] nextGen, int i) {
+        TCChromosome father = selectParent(rng, eliteSize);
+        TCChromosome mother = selectParent(rng, eliteSize);
+
+        TCChromosome son;
+        TCChromosome daughter;
+
+        if (rng.nextDouble() < crossover) {
+            int from = operator.drawFrom(rng, mother.size());
+            int to = operator.drawTo(rng, mother.size(), from);
+            son = father.crossover(mother, operator, from, to);
+            daughter = mother.crossover(father, operator, from, to);
+            evaluations.add(2);
+
+        } else {
+            son = father;
+            daughter = mother;
+        }
+
+        if (rng.nextDouble() < mutation) {
+            son = son.mutate(testCases, rng);
+            evaluations.increment();
+        }
+
+        if (rng.nextDouble() < mutation) {
+            daughter = daughter.mutate(testCases, rng);
+            evaluations.increment();
+        }
+
+        nextGen[i] = son;
+        if (i != (size - 1)) { // Handle odd size pop
+            nextGen[i + 1] = daughter;
+        }
     }
 
     /**
      * Select a random parent from the population.
      *
+     * @param rng the random stream to select with
      * @param limit the cutoff point of where the parent should be taken from.
      * @return random chromosome
      */
-    private TCChromosome selectParent(int limit) {
-        TCChromosome parent = population.get(random.nextInt(limit));
+    private TCChromosome selectParent(Rng rng, int limit) {
+        TCChromosome parent = population.get(rng.nextInt(limit));
         for (int i = 0; i < tournament; i++) {
-            TCChromosome opponent = population.get(random.nextInt(limit));
+            TCChromosome opponent = population.get(rng.nextInt(limit));
             if (opponent.getFitness() < parent.getFitness())
                 parent = opponent;
         }
         return parent;
     }
+
+    /**
+     * Breeds a range of chunks of pairs of offspring, splitting the range in
+     * half until one chunk remains.
+     */
+    private class Breed extends RecursiveAction {
+        /**
+         * The number of chromosomes parents are selected from.
+         */
+        private final int eliteSize;
+
+        /**
+         * The generation being bred.
+         */
+        private final TCChromosome[] nextGen;
+
+        /**
+         * The random stream of each chunk.
+         */
+        private final Rng[] streams;
+
+        /**
+         * The first chunk to breed.
+         */
+        private final int from;
+
+        /**
+         * The chunk after the last to breed.
+         */
+        private final int to;
+
+        /**
+         * Constructor.
+         *
+         * @param eliteSize the number of chromosomes parents are selected from
+         * @param nextGen the generation being bred
+         * @param streams the random stream of each chunk
+         * @param from the first chunk to breed
+         * @param to the chunk after the last to breed
+         */
+        Breed(int eliteSize, TCChromosome[] nextGen, Rng[] streams, int from, int to) {
+            this.eliteSize = eliteSize;
+            this.nextGen = nextGen;
+            this.streams = streams;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Breed(eliteSize, nextGen, streams, from, mid),
+                        new Breed(eliteSize, nextGen, streams, mid, to));
+                return;
+            }
+
+            int last = Math.min((size + 1) / 2, (from + 1) * CHUNK);
+            for (int pair = from * CHUNK; pair < last; pair++)
+                breed(streams[from], eliteSize, nextGen, pair * 2);
+        }
+    }
+
+    /**
+     * Moves the fittest chromosomes of each segment of a generation to the
+     * head of the segment, in order, leaving the rest of the segment
+     * unordered. Ranges of segments are split in half until one remains.
+     */
+    private static class SelectElite extends RecursiveAction {
+        /**
+         * The generation being selected from.
+         */
+        private final TCChromosome[] nextGen;
+
+        /**
+         * The number of chromosomes to select from each segment.
+         */
+        private final int elite;
+
+        /**
+         * The length of each segment.
+         */
+        private final int segment;
+
+        /**
+         * The first segment to select from.
+         */
+        private final int from;
+
+        /**
+         * The segment after the last to select from.
+         */
+        private final int to;
+
+        /**
+         * Constructor.
+         *
+         * @param nextGen the generation being selected from
+         * @param elite the number of chromosomes to select from each segment
+         * @param segment the length of each segment
+         * @param from the first segment to select from
+         * @param to the segment after the last to select from
+         */
+        SelectElite(TCChromosome[] nextGen, int elite, int segment, int from, int to) {
+            this.nextGen = nextGen;
+            this.elite = elite;
+            this.segment = segment;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new SelectElite(nextGen, elite, segment, from, mid),
+                        new SelectElite(nextGen, elite, segment, mid, to));
+                return;
+            }
+
+            int lo = from * segment;
+            int hi = Math.min(nextGen.length, lo + segment);
+            int k = Math.min(elite, hi - lo);
+            select(lo, hi - 1, lo + k - 1);
+            Arrays.sort(nextGen, lo, lo + k);
+        }
+
+        /**
+         * Partially orders the chromosomes between the given bounds so that
+         * none after the nth is fitter than any before it.
+         *
+         * @param lo the first index, inclusive
+         * @param hi the last index, inclusive
+         * @param n the index to partition around
+         */
+        private void select(int lo, int hi, int n) {
+            while (lo < hi) {
+                double pivot = nextGen[(lo + hi) >>> 1].getFitness();
+                int i = lo;
+                int j = hi;
+                while (i <= j) {
+                    while (nextGen[i].getFitness() < pivot)
+                        i++;
+                    while (nextGen[j].getFitness() > pivot)
+                        j--;
+                    if (i <= j) {
+                        TCChromosome t = nextGen[i];
+                        nextGen[i++] = nextGen[j];
+                        nextGen[j--] = t;
+                    }
+                }
+                if (n <= j)
+                    hi = j;
+                else if (n >= i)
+                    lo = i;
+                else
+                    return;
+            }
+        }
+    }
 }
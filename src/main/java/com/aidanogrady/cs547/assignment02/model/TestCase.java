@@ -1,5 +1,7 @@
 package com.aidanogrady.cs547.assignment02.model;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -15,7 +17,8 @@ public class TestCase {
     private String testName;
 
     /**
-     * The faults to be detected.
+     * The faults to be detected, or null if the test was constructed from its
+     * row, in which case they are listed from the row on request.
      */
     private List<Integer> faults;
 
@@ -24,6 +27,18 @@ public class TestCase {
      */
     private int numOfFaults;
 
+    /**
+     * The faults to be detected as a bitset, where bit i is set if fault i + 1
+     * is detected. This is the test's row of the fault matrix.
+     */
+    private long[] faultRow;
+
+    /**
+     * The number of faults each bit of the row stands for, shared by every
+     * test of a reduced suite, or null if each bit is a single fault.
+     */
+    private int[] weights;
+
     /**
      * The number of faults that this test case detects.
      */
@@ -45,10 +60,60 @@ public class TestCase {
         this.testName = testName;
         this.faults = faults;
         this.numOfFaults = numOfFaults;
+        this.faultRow = new long[APFD.words(numOfFaults)];
+        for (int fault : faults)
+            faultRow[(fault - 1) >>> 6] |= 1L << (fault - 1);
         this.faultsFound = faults.size();
         this.coverage = (double) this.faultsFound / this.numOfFaults;
     }
 
+    /**
+     * Constructs a new test case from its row of the fault matrix, which it
+     * keeps rather than copies.
+     *
+     * @param testName the name of the test
+     * @param faultRow the faults the test detects, where bit i is fault i + 1
+     * @param numOfFaults the number of faults that could be detected
+     */
+    public TestCase(String testName, long[] faultRow, int numOfFaults) {
+        this(testName, faultRow, numOfFaults, null);
+    }
+
+    /**
+     * Constructs a new test case of a reduced suite, whose row has a bit per
+     * class of faults detected by the same tests rather than per fault.
+     *
+     * @param testName the name of the test
+     * @param faultRow the fault classes the test detects
+     * @param numOfFaults the number of faults that could be detected
+     * @param weights the number of faults in each class, or null if each bit
+     * is a single fault
+     */
+    public TestCase(String testName, long[] faultRow, int numOfFaults, int[] weights) {
+        this.testName = testName;
+        this.numOfFaults = numOfFaults;
+        this.faultRow = faultRow;
+        this.weights = weights;
+        for (int w = 0; w < faultRow.length; w++)
+            this.faultsFound += APFD.count(faultRow[w], w, weights);
+        this.coverage = (double) this.faultsFound / this.numOfFaults;
+    }
+
+    /**
+     * Returns the faults set in the given row of the fault matrix.
+     *
+     * @param faultRow the row of the fault matrix
+     * @return faults
+     */
+    private static List<Integer> toFaults(long[] faultRow) {
+        List<Integer> faults = new ArrayList<>();
+        for (int w = 0; w < faultRow.length; w++) {
+            for (long bits = faultRow[w]; bits != 0; bits &= bits - 1)
+                faults.add((w << 6) + Long.numberOfTrailingZeros(bits) + 1);
+        }
+        return faults;
+    }
+
     /**
      * Returns the name of the test.
      *
@@ -59,12 +124,31 @@ public class TestCase {
     }
 
     /**
-     * Returns the faults.
+     * Returns the faults, or the fault classes if the suite is reduced. For a
+     * test constructed from its row, they are listed afresh on each call.
      *
      * @return faults
      */
     public List<Integer> getFaults() {
-        return faults;
+        return faults != null ? faults : toFaults(faultRow);
+    }
+
+    /**
+     * Returns the faults as a bitset row of the fault matrix.
+     *
+     * @return faultRow
+     */
+    public long[] getFaultRow() {
+        return faultRow;
+    }
+
+    /**
+     * Returns the number of faults each bit of the row stands for.
+     *
+     * @return weights, or null if each bit is a single fault
+     */
+    public int[] getWeights() {
+        return weights;
     }
 
     /**
@@ -107,13 +191,13 @@ public class TestCase {
         TestCase testCase = (TestCase) o;
 
         if (numOfFaults != testCase.numOfFaults) return false;
-        return faults != null ? faults.equals(testCase.faults) : testCase.faults == null;
+        return Arrays.equals(faultRow, testCase.faultRow);
 
     }
 
     @Override
     public int hashCode() {
-        int result = faults != null ? faults.hashCode() : 0;
+        int result = Arrays.hashCode(faultRow);
         result = 31 * result + numOfFaults;
         return result;
     }
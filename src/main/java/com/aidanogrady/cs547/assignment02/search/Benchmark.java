@@ -0,0 +1,149 @@
+package com.aidanogrady.cs547.assignment02.search;
+
+import com.aidanogrady.cs547.assignment02.model.Rng;
+import com.aidanogrady.cs547.assignment02.model.TestCase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs a search multiple times and reports the average results. The runs are
+ * independent of each other, so they are spread over a pool of threads and
+ * their results added up as they finish. Each run is given its own random
+ * stream split from the seed, so a benchmark can be repeated run for run.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+public class Benchmark {
+    /**
+     * The number of times to run the search.
+     */
+    private final int runs;
+
+    /**
+     * The number of threads to perform the runs on.
+     */
+    private final int threads;
+
+    /**
+     * The properties of the search.
+     */
+    private final Properties props;
+
+    /**
+     * Constructor.
+     *
+     * @param props the properties of the benchmark
+     */
+    public Benchmark(Properties props) {
+        this.props = props;
+        this.runs = Integer.parseInt(props.getProperty("benchmark"));
+        String threads = props.getProperty("benchmark.threads");
+        this.threads = threads == null
+                ? Runtime.getRuntime().availableProcessors()
+                : Integer.parseInt(threads);
+    }
+
+    /**
+     * Runs the given search over the test cases, logging the results of each
+     * run and the averages over all runs.
+     *
+     * @param search the search to benchmark
+     * @param cases the test cases to be used
+     */
+    public void run(Search search, List<TestCase> cases) {
+        Logger logger = LoggerFactory.getLogger(search.getClass());
+        String name = search.getClass().getSimpleName();
+        logger.info("Starting " + name + " benchmark");
+
+        // Streams are split here rather than by each run, so that every run
+        // gets the same stream whichever thread performs it.
+        Rng root = Rng.fromProperties(props);
+        logger.info("Seed: " + root.getSeed());
+
+        DoubleAdder totalFitness = new DoubleAdder();
+        LongAdder totalTime = new LongAdder();
+        Map<String, LongAdder> totalCounters = new ConcurrentHashMap<>();
+        List<String> counterNames = new ArrayList<>();
+
+        long wallTime = System.currentTimeMillis();
+        int poolSize = Math.max(1, Math.min(threads, runs));
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (int i = 1; i <= runs; i++) {
+                final int run = i;
+                final Rng rng = root.split();
+                futures.add(executor.submit(() -> {
+                    logger.info("Starting run " + run);
+
+                    long time = System.currentTimeMillis();
+                    Result result = search.search(props, cases, rng);
+                    time = System.currentTimeMillis() - time;
+
+                    totalFitness.add(result.getResult().getFitness());
+                    totalTime.add(time);
+                    for (Map.Entry<String, Integer> counter : result.getCounters().entrySet())
+                        totalCounters.computeIfAbsent(counter.getKey(), k -> new LongAdder())
+                                .add(counter.getValue());
+
+                    logger.info("Finished run " + run + " in " + time + "ms");
+                    logger.info("Result took " + describe(result.getCounters()) + ".");
+                    logger.info("Result: " + result.getResult());
+                    return result;
+                }));
+            }
+            for (Future<Result> future : futures) {
+                Result result = future.get();
+                if (counterNames.isEmpty())
+                    counterNames.addAll(result.getCounters().keySet());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.info(name + " benchmark interrupted");
+            return;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(name + " run failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        wallTime = System.currentTimeMillis() - wallTime;
+        logger.info("Finished " + name + " benchmark");
+
+        logger.info("Average fitness: " + totalFitness.sum() / runs);
+        for (String counter : counterNames)
+            logger.info("Average " + counter + ": " + totalCounters.get(counter).doubleValue() / runs);
+
+        logger.info("Total time: " + totalTime.sum() + " ms");
+        logger.info("Average time: " + totalTime.sum() / runs + " ms");
+        logger.info("Wall time: " + wallTime + " ms on " + poolSize + " thread(s)");
+    }
+
+    /**
+     * Describes the given counters, such as "5 climbs, 2 restarts".
+     *
+     * @param counters the counters to describe
+     * @return description of counters
+     */
+    private static String describe(Map<String, Integer> counters) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Integer> counter : counters.entrySet()) {
+            if (sb.length() > 0)
+                sb.append(", ");
+            sb.append(counter.getValue()).append(' ').append(counter.getKey());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,162 @@
+package com.aidanogrady.cs547.assignment02.search;
+
+import com.aidanogrady.cs547.assignment02.io.PopulationCheckpoint;
+import com.aidanogrady.cs547.assignment02.model.PopulationSnapshot;
+import com.aidanogrady.cs547.assignment02.model.Rng;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checkpoints a genetic algorithm's population every ga.checkpoint.interval
+ * generations. Each run has a checkpoint file of its own, named after the
+ * ga.checkpoint property and the seed and gamma its random stream started
+ * with, so the repetitions of a benchmark neither resume from nor overwrite
+ * each other's, and a seeded run finds its own file when run again. The
+ * search only copies its population into a snapshot, which a writer thread
+ * then writes out, so a search never waits on the file. Should the writer
+ * fall behind, only the latest snapshot waiting is written.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+final class Checkpointer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Checkpointer.class);
+
+    /**
+     * The checkpoint file.
+     */
+    private final Path path;
+
+    /**
+     * The number of generations between checkpoints.
+     */
+    private final int interval;
+
+    /**
+     * The latest snapshot not yet written, or null.
+     */
+    private final AtomicReference<PopulationSnapshot> pending = new AtomicReference<>();
+
+    /**
+     * The thread writing the snapshots.
+     */
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "checkpoint-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructor.
+     *
+     * @param path the checkpoint file
+     * @param interval the number of generations between checkpoints
+     */
+    private Checkpointer(Path path, int interval) {
+        this.path = path;
+        this.interval = interval;
+    }
+
+    /**
+     * Constructs a checkpointer for the run with the given random stream, to
+     * the file given by the ga.checkpoint property suffixed with the stream's
+     * seed and gamma, every ga.checkpoint.interval generations, 10 by default.
+     *
+     * @param props the properties that may give a checkpoint file
+     * @param rng the random stream of the run, before it has drawn anything
+     * @return checkpointer, or null if no checkpoint file is given
+     */
+    static Checkpointer fromProperties(Properties props, Rng rng) {
+        String file = props.getProperty("ga.checkpoint");
+        if (file == null)
+            return null;
+        int interval = Integer.parseInt(props.getProperty("ga.checkpoint.interval", "10"));
+        if (interval < 1)
+            throw new IllegalArgumentException("ga.checkpoint.interval must be at least 1");
+        if (props.getProperty("seed") == null)
+            LOGGER.warn("No seed is given, so this run's checkpoint will not be resumed by the next");
+        Path path = Paths.get(file);
+        String run = String.format("%s.%016x-%016x", path.getFileName(), rng.getSeed(), rng.getGamma());
+        return new Checkpointer(path.resolveSibling(run), interval);
+    }
+
+    /**
+     * Reads the snapshot to resume from, if the checkpoint file exists.
+     *
+     * @return snapshot, or null to start afresh
+     */
+    PopulationSnapshot resume() {
+        if (!Files.exists(path))
+            return null;
+        try {
+            return PopulationCheckpoint.read(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not resume from " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns whether a checkpoint is due after the given generation.
+     *
+     * @param generations the number of generations gone through
+     * @return true if the population should be checkpointed
+     */
+    boolean isDue(int generations) {
+        return generations % interval == 0;
+    }
+
+    /**
+     * Hands a snapshot to the writer thread.
+     *
+     * @param snapshot the snapshot to write
+     */
+    void offer(PopulationSnapshot snapshot) {
+        if (pending.getAndSet(snapshot) == null)
+            writer.execute(this::write);
+    }
+
+    /**
+     * Writes the latest snapshot waiting. A failed checkpoint is logged
+     * rather than failing the search, leaving the previous one in place.
+     */
+    private void write() {
+        PopulationSnapshot snapshot = pending.getAndSet(null);
+        try {
+            PopulationCheckpoint.write(snapshot, path);
+        } catch (IOException e) {
+            LOGGER.error("Could not checkpoint generation " + snapshot.getGenerations() + " to " + path, e);
+        }
+    }
+
+    /**
+     * Waits for the snapshots waiting to be written, and stops the writer
+     * thread. The checkpoint of a finished search is deleted, so that it is
+     * not resumed; that of a search stopped early is kept.
+     *
+     * @param finished whether the search finished, rather than being stopped
+     */
+    void close(boolean finished) {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(1, TimeUnit.MINUTES))
+                LOGGER.warn("Gave up waiting for checkpoint to " + path);
+            if (finished)
+                Files.deleteIfExists(path);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOGGER.warn("Could not delete checkpoint " + path, e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.aidanogrady.cs547.assignment02.search;
+
+/**
+ * The best and average fitness of a run over time, held in a fixed number of
+ * points however long the run is. Once the points are full, every other point
+ * is dropped and only every other later one is kept, so the curve stays
+ * evenly downsampled as it grows.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+final class Curve {
+    /**
+     * When the run started, from System.nanoTime.
+     */
+    private final long start = System.nanoTime();
+
+    /**
+     * The milliseconds into the run of each point.
+     */
+    private final long[] millis;
+
+    /**
+     * The evaluations performed by each point.
+     */
+    private final long[] evaluations;
+
+    /**
+     * The best fitness at each point.
+     */
+    private final double[] best;
+
+    /**
+     * The average fitness at each point, or NaN.
+     */
+    private final double[] average;
+
+    /**
+     * The number of points held.
+     */
+    private int size;
+
+    /**
+     * Every how many points offered are kept.
+     */
+    private int stride = 1;
+
+    /**
+     * The number of points offered.
+     */
+    private long offered;
+
+    /**
+     * Constructor.
+     *
+     * @param points the most points to hold, at least 2
+     */
+    Curve(int points) {
+        int capacity = Math.max(2, points);
+        millis = new long[capacity];
+        evaluations = new long[capacity];
+        best = new double[capacity];
+        average = new double[capacity];
+    }
+
+    /**
+     * Offers a point of the curve, which is kept if it falls on the stride.
+     *
+     * @param evaluations the evaluations performed so far
+     * @param best the best fitness so far
+     * @param average the average fitness, or NaN
+     */
+    synchronized void add(long evaluations, double best, double average) {
+        if (offered++ % stride != 0)
+            return;
+        if (size == millis.length) {
+            // Every even point is kept, including the last of an odd number.
+            size = (size + 1) / 2;
+            for (int i = 1; i < size; i++) {
+                this.millis[i] = this.millis[2 * i];
+                this.evaluations[i] = this.evaluations[2 * i];
+                this.best[i] = this.best[2 * i];
+                this.average[i] = this.average[2 * i];
+            }
+            stride *= 2;
+            if ((offered - 1) % stride != 0)
+                return;
+        }
+        this.millis[size] = (System.nanoTime() - start) / 1_000_000;
+        this.evaluations[size] = evaluations;
+        this.best[size] = best;
+        this.average[size] = average;
+        size++;
+    }
+
+    /**
+     * Returns a copy of the points, as rows of milliseconds, evaluations,
+     * best fitness and average fitness.
+     *
+     * @return points
+     */
+    synchronized double[][] points() {
+        double[][] points = new double[size][];
+        for (int i = 0; i < size; i++)
+            points[i] = new double[]{millis[i], evaluations[i], best[i], average[i]};
+        return points;
+    }
+}
@@ -1,87 +1,228 @@
 package com.aidanogrady.cs547.assignment02.search;
 
+import com.aidanogrady.cs547.assignment02.metrics.SearchMetrics;
+import com.aidanogrady.cs547.assignment02.model.FitnessCache;
+import com.aidanogrady.cs547.assignment02.model.PopulationSnapshot;
+import com.aidanogrady.cs547.assignment02.model.Rng;
 import com.aidanogrady.cs547.assignment02.model.TCChromosome;
 import com.aidanogrady.cs547.assignment02.model.TCPopulation;
 import com.aidanogrady.cs547.assignment02.model.TestCase;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Phaser;
 
 /**
  * The Genetic Algorithm search is not a local search, but instead polls various
  * different potential solutions, and uses them to continuously create better
  * ones until the correct solution is found.
  *
+ * With ga.islands above 1, the search runs an island model: each island is an
+ * independent population evolving on its own thread, and every
+ * ga.migration.interval generations each island sends copies of its
+ * ga.migration.size fittest chromosomes to another, replacing the receiver's
+ * least fit. Islands send along a ring, or along a random cycle drawn afresh
+ * for each migration, so every island receives exactly one batch. Batches are
+ * handed over through lock-free queues, and the islands only meet at each
+ * migration to agree on the global best, stopping together once it is 0 or
+ * has stalled for the stall limit. As islands draw from their own streams and
+ * meet at fixed generations, a seeded search is reproducible.
+ *
+ * With ga.checkpoint set, a single population is checkpointed as it evolves,
+ * to a file of the run's own, and a run finding its file resumes from it,
+ * carrying on exactly as the checkpointed run would have.
+ *
  * @author Aidan O'Grady
  * @since 0.2
  */
 public class GeneticAlgorithmSearch implements Search {
-    private static final Logger LOGGER = LoggerFactory.getLogger(GeneticAlgorithmSearch.class);
+    /**
+     * Used to measure the memory each generation allocates.
+     */
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * The live metrics of every run of this search.
+     */
+    private final SearchMetrics metrics = SearchMetrics.register(getClass().getSimpleName());
 
     @Override
-    public Result search(Properties props, List<TestCase> cases) {
+    public Result search(Properties props, List<TestCase> cases, Rng rng, SearchControl control) {
+        int islands = Integer.parseInt(props.getProperty("ga.islands", "1"));
+        metrics.runStarted();
+        if (islands > 1) {
+            if (props.getProperty("ga.checkpoint") != null)
+                throw new IllegalArgumentException("ga.checkpoint cannot be combined with ga.islands above 1");
+            return searchIslands(props, cases, rng, control, islands);
+        }
+
         int limit = Integer.parseInt(props.getProperty("stall"));
+        Trace trace = new Trace(props, "Generation");
+        Checkpointer checkpointer = Checkpointer.fromProperties(props, rng);
+        PopulationSnapshot snapshot = checkpointer != null ? checkpointer.resume() : null;
 
-        TCPopulation population = new TCPopulation(props, cases);
+        TCPopulation population = snapshot != null
+                ? new TCPopulation(props, cases, snapshot)
+                : new TCPopulation(props, cases, rng);
+        long evaluations = population.getEvaluations();
+        metrics.evaluated(evaluations);
+        control.evaluated(evaluations);
 
         TCChromosome best = population.getFittest();
+        control.improved(best);
 
-        int generations = 1;
-        int stalls = 0;
-        LOGGER.debug("Generation " + generations + ". " + best);
-        while (best.getFitness() > 0 && stalls < limit) {
-            population.evolve();
-
-            if (population.getFittest().getFitness() == best.getFitness())
-                stalls++;
-            else if (population.getFittest().getFitness() < best.getFitness())
-                stalls = 0;
-            best = population.getFittest();
-            generations++;
-            LOGGER.debug("Generation " + generations + ". Best: " + best + " Average: " + population.getAverageFitness());
+        int generations = snapshot != null ? snapshot.getGenerations() : 1;
+        int stalls = snapshot != null ? snapshot.getStalls() : 0;
+        long allocated = 0;
+        boolean finished = false;
+        if (trace.sample(generations, true))
+            trace.record(generations, best, population.getAverageFitness());
+        try {
+            while (best.getFitness() > 0 && stalls < limit && !control.shouldStop()) {
+                long start = System.nanoTime();
+                long before = allocatedBytes();
+                population.evolve();
+                allocated += allocatedBytes() - before;
+                evaluations = record(population, control, start, evaluations);
+
+                boolean improved = population.getFittest().getFitness() < best.getFitness();
+                if (population.getFittest().getFitness() == best.getFitness())
+                    stalls++;
+                else if (improved)
+                    stalls = 0;
+                if (improved)
+                    control.improved(population.getFittest());
+                else
+                    metrics.stalled();
+                best = population.getFittest();
+                generations++;
+                if (trace.sample(generations, improved))
+                    trace.record(generations, best, population.getAverageFitness());
+                if (checkpointer != null && checkpointer.isDue(generations))
+                    checkpointer.offer(population.snapshot(generations, stalls));
+            }
+
+            // A search stopped by its control is checkpointed where it stopped,
+            // to be resumed with a greater budget.
+            finished = best.getFitness() == 0 || stalls >= limit;
+            if (checkpointer != null && !finished)
+                checkpointer.offer(population.snapshot(generations, stalls));
+        } finally {
+            population.shutdown();
+            if (checkpointer != null)
+                checkpointer.close(finished);
         }
+        long perGeneration = generations > 1 ? allocated / (generations - 1) : 0;
         generations -= stalls;
-        return new GAResult(best, generations);
+        return new GAResult(best, generations, (int) Math.min(perGeneration, Integer.MAX_VALUE),
+                population.getCache());
     }
 
     @Override
-    public void benchmark(Properties props, List<TestCase> cases) {
-        int runs = Integer.parseInt(props.getProperty("benchmark"));
-        LOGGER.info("Starting GeneticAlgorithmSearch benchmark");
-
-        double totalFitness = 0.0;
-        long totalTime = 0;
-
-        int totalGenerations = 0;
-
-        for (int i = 1; i <= runs; i++) {
-            LOGGER.info("Starting run " + i);
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
 
-            long time = System.currentTimeMillis();
-            GAResult result = (GAResult) search(props, cases);
-            time = System.currentTimeMillis() - time;
+    /**
+     * Records the evolution of a generation in the metrics and on the run's
+     * curve.
+     *
+     * @param population the population that evolved
+     * @param control the control of the run the population is in
+     * @param start when the evolution started, from System.nanoTime
+     * @param evaluations the number of evaluations the population had
+     * performed before evolving
+     * @return the number of evaluations the population has now performed
+     */
+    private long record(TCPopulation population, SearchControl control, long start, long evaluations) {
+        long nanos = System.nanoTime() - start;
+        long now = population.getEvaluations();
+        metrics.evaluated(now - evaluations);
+        control.evaluated(now - evaluations);
+        double average = population.getAverageFitness();
+        metrics.evolved(nanos, population.getFittest().getFitness(), average);
+        control.progressed(population.getFittest().getFitness(), average);
+        return now;
+    }
 
-            totalFitness += result.result.getFitness();
-            totalTime += time;
+    /**
+     * Runs an island model search over the given number of islands.
+     *
+     * @param props the configuration of the search
+     * @param cases the test cases to prioritise
+     * @param rng the random stream of the search
+     * @param control the budget of the search, shared by every island
+     * @param islands the number of islands
+     * @return result of the search
+     */
+    private Result searchIslands(Properties props, List<TestCase> cases, Rng rng, SearchControl control,
+                                 int islands) {
+        Archipelago archipelago = new Archipelago(this, props, cases, rng.split(), control, islands);
+        List<Island> all = new ArrayList<>(islands);
+        for (int i = 0; i < islands; i++)
+            all.add(new Island(archipelago, i, rng.split()));
 
-            totalGenerations += result.generations;
+        ExecutorService executor = Executors.newFixedThreadPool(islands);
+        try {
+            List<Future<Island>> futures = new ArrayList<>(islands);
+            for (Island island : all)
+                futures.add(executor.submit(island));
 
+            Island best = null;
+            long allocated = 0;
+            long hits = 0;
+            long misses = 0;
+            for (Future<Island> future : futures) {
+                Island island = future.get();
+                if (best == null || island.best.getFitness() < best.best.getFitness())
+                    best = island;
+                allocated += island.allocated;
+                if (island.cache != null) {
+                    hits += island.cache.getHits();
+                    misses += island.cache.getMisses();
+                }
+            }
 
-            LOGGER.info("Finished run " + i + " in " + time + "ms");
-            LOGGER.info("Result took " + result.generations + " generations.");
-            LOGGER.info("Result: " + result.result);
+            long perGeneration = best.generations > 1 ? allocated / islands / (best.generations - 1) : 0;
+            GAResult result = new GAResult(best.best, best.generations - best.stalls,
+                    (int) Math.min(perGeneration, Integer.MAX_VALUE), best.cache);
+            if (best.cache != null) {
+                result.hits = hits;
+                result.misses = misses;
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Island search interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Island failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
-        LOGGER.info("Finished GeneticAlgorithmSearch benchmark");
-
-        double avgFitness = totalFitness / runs;
-        LOGGER.info("Average fitness: " + avgFitness);
-        LOGGER.info("Average generations: " + totalGenerations / runs);
+    }
 
-        long avgTime = totalTime / runs;
-        LOGGER.info("Total time: " + totalTime + " ms");
-        LOGGER.info("Average time: " + avgTime + " ms");
+    /**
+     * Returns the number of bytes allocated by the current thread so far, or
+     * 0 if the JVM cannot measure it. Allocations made by other threads, such
+     * as those breeding generations in parallel, are not included.
+     *
+     * @return bytes allocated by the current thread
+     */
+    private static long allocatedBytes() {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean))
+            return 0;
+        return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
     }
 
     /**
@@ -101,15 +242,328 @@ public class GeneticAlgorithmSearch implements Search {
          */
         final int generations;
 
+        /**
+         * The average number of bytes the search thread allocated evolving
+         * each generation.
+         */
+        final int allocated;
+
+        /**
+         * The cache of fitnesses used by the search, or null if none was.
+         */
+        final FitnessCache cache;
+
+        /**
+         * The number of cache hits, summed over every island.
+         */
+        long hits;
+
+        /**
+         * The number of cache misses, summed over every island.
+         */
+        long misses;
+
         /**
          * Constructs a new GAResult.
          *
          * @param result the result of the search
          * @param generations the number of generations of the search
+         * @param allocated the average bytes allocated per generation
+         * @param cache the cache of fitnesses used, or null
          */
-        GAResult(TCChromosome result, int generations) {
+        GAResult(TCChromosome result, int generations, int allocated, FitnessCache cache) {
             this.result = result;
             this.generations = generations;
+            this.allocated = allocated;
+            this.cache = cache;
+            if (cache != null) {
+                this.hits = cache.getHits();
+                this.misses = cache.getMisses();
+            }
+        }
+
+        @Override
+        public TCChromosome getResult() {
+            return result;
+        }
+
+        @Override
+        public Map<String, Integer> getCounters() {
+            Map<String, Integer> counters = new LinkedHashMap<>();
+            counters.put("generations", generations);
+            counters.put("bytes allocated per generation", allocated);
+            if (cache != null) {
+                counters.put("cache hits", (int) Math.min(hits, Integer.MAX_VALUE));
+                counters.put("cache misses", (int) Math.min(misses, Integer.MAX_VALUE));
+            }
+            return counters;
+        }
+    }
+
+    /**
+     * The state shared by the islands of an island model search.
+     *
+     * @author Aidan O'Grady
+     * @since 0.3
+     */
+    private static class Archipelago {
+        /**
+         * The search the islands belong to.
+         */
+        final GeneticAlgorithmSearch search;
+
+        /**
+         * The configuration of the search.
+         */
+        final Properties props;
+
+        /**
+         * The test cases to prioritise.
+         */
+        final List<TestCase> cases;
+
+        /**
+         * The budget of the search.
+         */
+        final SearchControl control;
+
+        /**
+         * The number of generations between migrations.
+         */
+        final int interval;
+
+        /**
+         * The number of chromosomes sent at each migration.
+         */
+        final int migrants;
+
+        /**
+         * The stream the random topology is drawn from, which each island
+         * copies so that all draw the same cycles, or null for a ring.
+         */
+        final Rng topology;
+
+        /**
+         * Where the islands meet at each migration.
+         */
+        final Phaser phaser;
+
+        /**
+         * The fittest of each island at each migration, alternating between
+         * two rows so that one migration's can be read while the next is
+         * written.
+         */
+        final double[][] bests;
+
+        /**
+         * Whether each island was told to stop by the control at each
+         * migration, alternating as bests do, so that all islands agree on
+         * when to stop.
+         */
+        final boolean[][] stops;
+
+        /**
+         * The queue of batches of migrants sent to each island.
+         */
+        final List<ConcurrentLinkedQueue<List<TCChromosome>>> inboxes;
+
+        /**
+         * Constructor.
+         *
+         * @param search the search the islands belong to
+         * @param props the configuration of the search
+         * @param cases the test cases to prioritise
+         * @param topology the stream the random topology is drawn from
+         * @param control the budget of the search
+         * @param islands the number of islands
+         */
+        Archipelago(GeneticAlgorithmSearch search, Properties props, List<TestCase> cases, Rng topology,
+                    SearchControl control, int islands) {
+            this.search = search;
+            this.props = props;
+            this.cases = cases;
+            this.control = control;
+            this.interval = Integer.parseInt(props.getProperty("ga.migration.interval", "10"));
+            this.migrants = Integer.parseInt(props.getProperty("ga.migration.size", "2"));
+            String kind = props.getProperty("ga.migration.topology", "ring");
+            if (interval < 1)
+                throw new IllegalArgumentException("ga.migration.interval must be at least 1");
+            if (!kind.equals("ring") && !kind.equals("random"))
+                throw new IllegalArgumentException("ga.migration.topology must be ring or random");
+            this.topology = kind.equals("random") ? topology : null;
+
+            this.phaser = new Phaser(islands);
+            this.bests = new double[2][islands];
+            this.stops = new boolean[2][islands];
+            this.inboxes = new ArrayList<>(islands);
+            for (int i = 0; i < islands; i++)
+                inboxes.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /**
+     * One island of an island model search, evolving its own population and
+     * exchanging migrants with the others.
+     *
+     * @author Aidan O'Grady
+     * @since 0.3
+     */
+    private static class Island implements Callable<Island> {
+        /**
+         * The state shared with the other islands.
+         */
+        private final Archipelago archipelago;
+
+        /**
+         * The index of this island.
+         */
+        private final int index;
+
+        /**
+         * The random stream of this island's population.
+         */
+        private final Rng rng;
+
+        /**
+         * This island's copy of the stream the random topology is drawn from,
+         * or null for a ring.
+         */
+        private final Rng topologyRng;
+
+        /**
+         * The fittest chromosome of this island when the search stopped.
+         */
+        TCChromosome best;
+
+        /**
+         * The number of generations this island went through.
+         */
+        int generations = 1;
+
+        /**
+         * The number of generations the global best stalled for.
+         */
+        int stalls;
+
+        /**
+         * The number of bytes this island's thread allocated evolving.
+         */
+        long allocated;
+
+        /**
+         * The cache of fitnesses used by this island, or null.
+         */
+        FitnessCache cache;
+
+        /**
+         * Constructor.
+         *
+         * @param archipelago the state shared with the other islands
+         * @param index the index of this island
+         * @param rng the random stream of this island's population
+         */
+        Island(Archipelago archipelago, int index, Rng rng) {
+            this.archipelago = archipelago;
+            this.index = index;
+            this.rng = rng;
+            Rng topology = archipelago.topology;
+            this.topologyRng = topology != null ? new Rng(topology.getSeed(), topology.getGamma()) : null;
+        }
+
+        @Override
+        public Island call() throws InterruptedException {
+            GeneticAlgorithmSearch search = archipelago.search;
+            Properties props = archipelago.props;
+            SearchControl control = archipelago.control;
+            Phaser phaser = archipelago.phaser;
+            int limit = Integer.parseInt(props.getProperty("stall"));
+            int islands = archipelago.inboxes.size();
+            int[] targets = new int[islands];
+            for (int i = 0; i < islands; i++)
+                targets[i] = (i + 1) % islands;
+
+            Trace trace = new Trace(props, "Island " + index + " migration");
+            TCPopulation population = null;
+            try {
+                population = new TCPopulation(props, archipelago.cases, rng);
+                cache = population.getCache();
+                long evaluations = population.getEvaluations();
+                search.metrics.evaluated(evaluations);
+                control.evaluated(evaluations);
+                control.improved(population.getFittest());
+                double globalBest = Double.MAX_VALUE;
+                for (int migration = 0; ; migration++) {
+                    long before = allocatedBytes();
+                    int evolved = 0;
+                    while (evolved < archipelago.interval && population.getFittest().getFitness() > 0
+                            && !control.shouldStop()) {
+                        double previous = population.getFittest().getFitness();
+                        long start = System.nanoTime();
+                        population.evolve();
+                        evaluations = search.record(population, control, start, evaluations);
+                        if (population.getFittest().getFitness() < previous)
+                            control.improved(population.getFittest());
+                        evolved++;
+                    }
+                    allocated += allocatedBytes() - before;
+                    generations += evolved;
+
+                    if (topologyRng != null)
+                        randomCycle(targets);
+                    archipelago.inboxes.get(targets[index]).add(population.emigrants(archipelago.migrants));
+                    double[] row = archipelago.bests[migration & 1];
+                    boolean[] stopRow = archipelago.stops[migration & 1];
+                    row[index] = population.getFittest().getFitness();
+                    stopRow[index] = control.shouldStop();
+                    phaser.awaitAdvanceInterruptibly(phaser.arrive());
+
+                    double fittest = Double.MAX_VALUE;
+                    for (double fitness : row)
+                        fittest = Math.min(fittest, fitness);
+                    if (fittest < globalBest) {
+                        globalBest = fittest;
+                        stalls = 0;
+                    } else {
+                        stalls += evolved;
+                        search.metrics.stalled();
+                    }
+                    boolean stop = false;
+                    for (boolean s : stopRow)
+                        stop |= s;
+
+                    List<TCChromosome> batch = archipelago.inboxes.get(index).poll();
+                    if (batch != null)
+                        population.immigrate(batch);
+                    if (trace.sample(migration + 1, stalls == 0))
+                        trace.record(migration + 1, population.getFittest(), population.getAverageFitness());
+                    if (globalBest == 0 || stalls >= limit || stop)
+                        break;
+                }
+                best = population.emigrants(1).get(0);
+                return this;
+            } finally {
+                phaser.arriveAndDeregister();
+                if (population != null)
+                    population.shutdown();
+            }
+        }
+
+        /**
+         * Draws a random cycle through every island, using Sattolo's
+         * algorithm, so that each island sends to and receives from exactly
+         * one other.
+         *
+         * @param targets the island each island sends to, overwritten
+         */
+        private void randomCycle(int[] targets) {
+            for (int i = 0; i < targets.length; i++)
+                targets[i] = i;
+            for (int i = targets.length - 1; i > 0; i--) {
+                int j = topologyRng.nextInt(i);
+                int t = targets[i];
+                targets[i] = targets[j];
+                targets[j] = t;
+            }
         }
     }
 }
@@ -1,11 +1,14 @@
 package com.aidanogrady.cs547.assignment02.search;
 
+import com.aidanogrady.cs547.assignment02.metrics.SearchMetrics;
+import com.aidanogrady.cs547.assignment02.model.FitnessCache;
+import com.aidanogrady.cs547.assignment02.model.Rng;
 import com.aidanogrady.cs547.assignment02.model.TCChromosome;
 import com.aidanogrady.cs547.assignment02.model.TestCase;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -17,92 +20,97 @@ import java.util.Properties;
  * @since 0.2
  */
 public class HillClimbingSearch implements Search {
-    private static final Logger LOGGER = LoggerFactory.getLogger(HillClimbingSearch.class);
+    /**
+     * The live metrics of every run of this search.
+     */
+    private final SearchMetrics metrics = SearchMetrics.register(getClass().getSimpleName());
 
     @Override
-    public Result search(Properties props, List<TestCase> cases) {
+    public Result search(Properties props, List<TestCase> cases, Rng rng, SearchControl control) {
         int limit = Integer.parseInt(props.getProperty("stall"));
         int setSize = Integer.parseInt(props.getProperty("size"));
         int steps = Integer.parseInt(props.getProperty("hillclimb.steps"));
+        FitnessCache cache = FitnessCache.fromProperties(props);
+        Trace trace = new Trace(props, "Climb");
+        double greedy = Double.parseDouble(props.getProperty("greedy.fraction", "0"));
+        double alpha = Double.parseDouble(props.getProperty("greedy.alpha", "0"));
+        metrics.runStarted();
 
         int climbs = 1;
         int restarts = 0;
 
-        TCChromosome best = TCChromosome.generateChromosome(setSize, cases);
-        LOGGER.debug(climbs + ". Best: " + best);
-        while (best.getFitness() > 0) {
+        TCChromosome best = start(setSize, cases, rng, cache, greedy, alpha);
+        metrics.evaluated(1);
+        metrics.improved(best.getFitness());
+        control.evaluated(1);
+        control.improved(best);
+        control.progressed(best.getFitness(), Double.NaN);
+        if (trace.sample(climbs, true))
+            trace.record(climbs, best);
+        while (best.getFitness() > 0 && !control.shouldStop()) {
             climbs++;
 
-            List<TCChromosome> neighbours = best.getNeighbours(cases, steps);
-            boolean plateau = true;
+            TCChromosome neighbour = best.getBestNeighbour(cases, steps);
+            int neighbours = best.size() * steps * 2;
+            metrics.evaluated(neighbours);
+            control.evaluated(neighbours);
+            metrics.climbed(neighbours, neighbour == null ? best.getFitness() : neighbour.getFitness());
 
-            for (TCChromosome n : neighbours) {
-                if (n.getFitness() < best.getFitness()) {
-                    best = n;
-                    plateau = false;
-                }
-            }
-
-            if (plateau) {
+            if (neighbour == null) {
                 int attempts = 0;
                 double fitness = best.getFitness();
-                while (attempts < limit && best.getFitness() == fitness) {
-                    TCChromosome t = TCChromosome.generateChromosome(setSize, cases);
+                while (attempts < limit && best.getFitness() == fitness && !control.shouldStop()) {
+                    TCChromosome t = start(setSize, cases, rng, cache, greedy, alpha);
+                    metrics.evaluated(1);
+                    control.evaluated(1);
                     if (t.getFitness() < best.getFitness()) {
                         best = t;
+                        metrics.improved(best.getFitness());
                     } else {
                         attempts++;
+                        metrics.stalled();
                     }
                 }
-                if (attempts == limit)
-                    return new HillClimbingResult(best, climbs, restarts);
+                if (best.getFitness() == fitness)
+                    return new HillClimbingResult(best, climbs, restarts, cache);
+                control.improved(best);
                 restarts++;
-                LOGGER.debug(climbs + ". restart number " + restarts);
-                LOGGER.debug(climbs + ". new best: " + best);
+                metrics.restarted();
             } else {
-                LOGGER.debug(climbs + ". new best: " + best);
+                best = neighbour;
+                control.improved(best);
             }
+            control.progressed(best.getFitness(), Double.NaN);
+            if (trace.sample(climbs, true))
+                trace.record(climbs, best);
         }
 
-        return new HillClimbingResult(best, climbs, restarts);
+        return new HillClimbingResult(best, climbs, restarts, cache);
     }
 
-    @Override
-    public void benchmark(Properties props, List<TestCase> cases) {
-        int runs = Integer.parseInt(props.getProperty("benchmark"));
-        LOGGER.info("Starting HillClimb benchmark");
-
-        double totalFitness = 0.0;
-        long totalTime = 0;
-
-        int totalClimbs = 0;
-        int totalRestarts = 0;
-
-        for (int i = 1; i <= runs; i++) {
-            LOGGER.info("Starting run " + i);
-
-            long time = System.currentTimeMillis();
-            HillClimbingResult result = (HillClimbingResult) search(props, cases);
-            time = System.currentTimeMillis() - time;
-
-            totalFitness += result.result.getFitness();
-            totalTime += time;
-            totalClimbs += result.climbs;
-            totalRestarts += result.restarts;
-
-            LOGGER.info("Finished run " + i + " in " + time + "ms");
-            LOGGER.info("Result took " + result.climbs + " climbs and " + result.restarts + " restarts.");
-            LOGGER.info("Result: " + result.result);
-        }
-        LOGGER.info("Finished HillClimbingSearch benchmark");
-
-        LOGGER.info("Average fitness: " + totalFitness / runs);
-        LOGGER.info("Average climbs: " + totalClimbs / runs);
-        LOGGER.info("Average restarts: " + totalRestarts / runs);
+    /**
+     * Generates a chromosome to start or restart climbing from, which is
+     * built greedily for the given fraction of starts and at random for the
+     * rest.
+     *
+     * @param setSize the number of cases to include
+     * @param cases the cases to select from
+     * @param rng the random stream to select with
+     * @param cache the cache of fitnesses, or null
+     * @param greedy the fraction of starts to build greedily
+     * @param alpha how far from greedy each choice may be
+     * @return chromosome to climb from
+     */
+    private static TCChromosome start(int setSize, List<TestCase> cases, Rng rng, FitnessCache cache,
+                                      double greedy, double alpha) {
+        if (greedy > 0 && rng.nextDouble() < greedy)
+            return TCChromosome.generateGreedy(setSize, cases, alpha, rng, cache);
+        return TCChromosome.generateChromosome(setSize, cases, rng, cache);
+    }
 
-        long avgTime = totalTime / runs;
-        LOGGER.info("Total time: " + totalTime + " ms");
-        LOGGER.info("Average time: " + avgTime + " ms");
+    @Override
+    public SearchMetrics getMetrics() {
+        return metrics;
     }
 
     /**
@@ -127,17 +135,41 @@ public class HillClimbingSearch implements Search {
          */
         final int restarts;
 
+        /**
+         * The cache of fitnesses used by the search, or null if none was.
+         */
+        final FitnessCache cache;
+
         /**
          * Constructs a new HillClimbingResult object.
          *
          * @param result the result of the search
          * @param climbs the number of climbs taken
          * @param restarts the number of restarts
+         * @param cache the cache of fitnesses used, or null
          */
-        public HillClimbingResult(TCChromosome result, int climbs, int restarts) {
+        public HillClimbingResult(TCChromosome result, int climbs, int restarts, FitnessCache cache) {
             this.result = result;
             this.climbs = climbs;
             this.restarts = restarts;
+            this.cache = cache;
+        }
+
+        @Override
+        public TCChromosome getResult() {
+            return result;
+        }
+
+        @Override
+        public Map<String, Integer> getCounters() {
+            Map<String, Integer> counters = new LinkedHashMap<>();
+            counters.put("climbs", climbs);
+            counters.put("restarts", restarts);
+            if (cache != null) {
+                counters.put("cache hits", (int) Math.min(cache.getHits(), Integer.MAX_VALUE));
+                counters.put("cache misses", (int) Math.min(cache.getMisses(), Integer.MAX_VALUE));
+            }
+            return counters;
         }
     }
 
@@ -0,0 +1,22 @@
+package com.aidanogrady.cs547.assignment02.search;
+
+import com.aidanogrady.cs547.assignment02.model.TCChromosome;
+
+/**
+ * Notified each time a search finds a new best chromosome.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+@FunctionalInterface
+public interface ImprovementListener {
+    /**
+     * Called with each new best chromosome, on the thread that found it and
+     * in order of improvement. The search waits for this to return, so it
+     * should be quick.
+     *
+     * @param best a copy of the new best chromosome, safe to keep
+     * @param evaluations the number of fitness evaluations performed so far
+     */
+    void improved(TCChromosome best, long evaluations);
+}
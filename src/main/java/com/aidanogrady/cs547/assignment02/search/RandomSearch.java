@@ -1,76 +1,93 @@
 package com.aidanogrady.cs547.assignment02.search;
 
+import com.aidanogrady.cs547.assignment02.metrics.SearchMetrics;
+import com.aidanogrady.cs547.assignment02.model.Rng;
 import com.aidanogrady.cs547.assignment02.model.TCChromosome;
 import com.aidanogrady.cs547.assignment02.model.TestCase;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Searches the space at random, making little use of the concepts of fitness or
- * a local search.
+ * a local search. With random.threads above 1, the attempts are split between
+ * that many workers, each drawing from its own stream and keeping its own
+ * best, and the bests are merged at the end. Ties are won by the earliest
+ * attempt, so a seeded search gives the same result however it is scheduled.
  *
  * @author Aidan O'Grady
  * @since 0.2
  */
 public class RandomSearch implements Search {
-    private static final Logger LOGGER = LoggerFactory.getLogger(RandomSearch.class);
+    /**
+     * The live metrics of every run of this search.
+     */
+    private final SearchMetrics metrics = SearchMetrics.register(getClass().getSimpleName());
 
     @Override
-    public Result search(Properties props, List<TestCase> cases) {
+    public Result search(Properties props, List<TestCase> cases, Rng rng, SearchControl control) {
         int setSize = Integer.parseInt(props.getProperty("size"));
         int limit = Integer.parseInt(props.getProperty("random.limit"));
+        int threads = Integer.parseInt(props.getProperty("random.threads", "1"));
+        if (threads < 1)
+            throw new IllegalArgumentException("random.threads must be at least 1");
+        metrics.runStarted();
 
-        TCChromosome best = null;
-        int i = 0;
-        int bestRun = 0;
-        while (i <= limit && (best == null || best.getFitness() > 0)) {
-            i++;
-
-            TCChromosome next = TCChromosome.generateChromosome(setSize, cases);
-            if (best == null || best.getFitness() > next.getFitness()) {
-                best = next;
-                bestRun = i;
-                LOGGER.debug(i + ". new best: " + best);
-            }
+        // Attempts are numbered from 1 to limit + 1 and split into contiguous
+        // ranges, one per worker.
+        long attempts = (long) limit + 1;
+        int workers = (int) Math.max(1, Math.min(threads, attempts));
+        AtomicLong firstOptimal = new AtomicLong(Long.MAX_VALUE);
+        Trace trace = new Trace(props, "Attempt");
+        List<Worker> all = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            long from = 1 + attempts * w / workers;
+            long to = 1 + attempts * (w + 1) / workers;
+            // A single worker draws from the search's own stream.
+            Rng stream = workers == 1 ? rng : rng.split();
+            all.add(new Worker(setSize, cases, stream, control, trace, from, to, firstOptimal));
         }
-        return new RandomResult(best, bestRun);
-    }
 
-    @Override
-    public void benchmark(Properties props, List<TestCase> cases) {
-        int runs = Integer.parseInt(props.getProperty("benchmark"));
-        LOGGER.info("Starting RandomSearch benchmark");
+        if (workers == 1)
+            return all.get(0).call().result();
 
-        double totalFitness = 0.0;
-        double totalAttempts = 0.0;
-        long totalTime = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<Worker>> futures = new ArrayList<>(workers);
+            for (Worker worker : all)
+                futures.add(executor.submit(worker));
 
-        for (int i = 1; i <= runs; i++) {
-            LOGGER.info("Starting run " + i);
-
-            long time = System.currentTimeMillis();
-            RandomResult result = (RandomResult) search(props, cases);
-            time = System.currentTimeMillis() - time;
-
-            totalFitness += result.result.getFitness();
-            totalAttempts += result.runs;
-            totalTime += time;
-
-            LOGGER.info("Finished run " + i + " in " + time + "ms");
-            LOGGER.info("Search took " + result.runs + " attempts");
-            LOGGER.info("Result: " + result.result);
+            // The first worker always makes the first attempt, so one has a best.
+            Worker best = null;
+            for (Future<Worker> future : futures) {
+                Worker worker = future.get();
+                if (worker.best != null && (best == null || worker.best.getFitness() < best.best.getFitness()))
+                    best = worker;
+            }
+            return best.result();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Random search interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Random search worker failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
-        LOGGER.info("Finished RandomSearch benchmark");
-
-        LOGGER.info("Average fitness: " + totalFitness / runs);
-        LOGGER.info("Average attempts: " + totalAttempts / runs);
-        LOGGER.info("Total time: " + totalTime + " ms");
-        LOGGER.info("Average time: " + totalTime / runs + " ms");
     }
 
+    @Override
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
 
     /**
      * Data class for the results of this search.
@@ -99,5 +116,141 @@ public class RandomSearch implements Search {
             this.result = result;
             this.runs = runs;
         }
+
+        @Override
+        public TCChromosome getResult() {
+            return result;
+        }
+
+        @Override
+        public Map<String, Integer> getCounters() {
+            Map<String, Integer> counters = new LinkedHashMap<>();
+            counters.put("attempts", runs);
+            return counters;
+        }
+    }
+
+    /**
+     * Performs a contiguous range of the attempts of a search, keeping the
+     * best chromosome of the range.
+     *
+     * Every worker stops once the budget runs out. Otherwise the only early
+     * stop is finding a chromosome with a fitness of 0, which cannot be beaten.
+     * Workers share the lowest attempt at which one was found, and stop once
+     * past it rather than straight away, so that the attempt reported is the
+     * same as if the attempts had been made in order.
+     *
+     * @author Aidan O'Grady
+     * @since 0.3
+     */
+    private class Worker implements Callable<Worker> {
+        /**
+         * The number of cases to include in each chromosome.
+         */
+        private final int setSize;
+
+        /**
+         * The cases to select from.
+         */
+        private final List<TestCase> cases;
+
+        /**
+         * The random stream of this worker.
+         */
+        private final Rng rng;
+
+        /**
+         * The budget of the search.
+         */
+        private final SearchControl control;
+
+        /**
+         * The trace of the search.
+         */
+        private final Trace trace;
+
+        /**
+         * The first attempt of this worker.
+         */
+        private final long from;
+
+        /**
+         * The attempt after the last of this worker.
+         */
+        private final long to;
+
+        /**
+         * The lowest attempt of any worker finding a fitness of 0.
+         */
+        private final AtomicLong firstOptimal;
+
+        /**
+         * The best chromosome found by this worker, or null.
+         */
+        TCChromosome best;
+
+        /**
+         * The attempt that found the best chromosome.
+         */
+        long bestRun;
+
+        /**
+         * Constructor.
+         *
+         * @param setSize the number of cases to include in each chromosome
+         * @param cases the cases to select from
+         * @param rng the random stream of this worker
+         * @param control the budget of the search
+         * @param trace the trace of the search
+         * @param from the first attempt of this worker
+         * @param to the attempt after the last of this worker
+         * @param firstOptimal the lowest attempt finding a fitness of 0
+         */
+        Worker(int setSize, List<TestCase> cases, Rng rng, SearchControl control, Trace trace,
+               long from, long to, AtomicLong firstOptimal) {
+            this.setSize = setSize;
+            this.cases = cases;
+            this.rng = rng;
+            this.control = control;
+            this.trace = trace;
+            this.from = from;
+            this.to = to;
+            this.firstOptimal = firstOptimal;
+        }
+
+        @Override
+        public Worker call() {
+            // The search's first attempt is always made, so it has a result
+            // however little of its budget is left.
+            for (long i = from; i < to && i < firstOptimal.get() && (i == 1 || !control.shouldStop()); i++) {
+                TCChromosome next = TCChromosome.generateChromosome(setSize, cases, rng);
+                metrics.evaluated(1);
+                control.evaluated(1);
+                boolean improved = best == null || best.getFitness() > next.getFitness();
+                if (improved) {
+                    best = next;
+                    bestRun = i;
+                    metrics.improved(best.getFitness());
+                    control.improved(best);
+                    control.progressed(control.getBest().getFitness(), Double.NaN);
+                    if (best.getFitness() <= 0)
+                        firstOptimal.accumulateAndGet(i, Math::min);
+                } else {
+                    metrics.stalled();
+                }
+                if (trace.sample(i, improved))
+                    trace.record(i, best);
+            }
+            return this;
+        }
+
+        /**
+         * Returns the result of this worker.
+         *
+         * @return result
+         */
+        RandomResult result() {
+            return new RandomResult(best, (int) Math.min(bestRun, Integer.MAX_VALUE));
+        }
     }
 }
@@ -1,11 +1,29 @@
 package com.aidanogrady.cs547.assignment02.search;
 
+import com.aidanogrady.cs547.assignment02.model.TCChromosome;
+
+import java.util.Map;
+
 /**
- * Each search algorithm returns its own unique results. This empty interface
- * is required just for defining the Search interface.
+ * Each search algorithm returns its own unique results, being the best
+ * chromosome found along with counters specific to the algorithm.
  *
  * @author Aidan O'Grady
  * @since 0.2
  */
 public interface Result {
+    /**
+     * Returns the best chromosome the search found.
+     *
+     * @return result
+     */
+    TCChromosome getResult();
+
+    /**
+     * Returns the counters specific to the search, such as the number of
+     * generations, in the order they should be reported.
+     *
+     * @return counters by name
+     */
+    Map<String, Integer> getCounters();
 }
@@ -0,0 +1,461 @@
+package com.aidanogrady.cs547.assignment02.search;
+
+import com.aidanogrady.cs547.assignment02.model.TestCase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes a record of every search run to the results file given by the
+ * results.file property, as JSON Lines, or as CSV if the file name ends in
+ * .csv. Each record holds the run's properties, the seed and gamma of its
+ * random stream, its best ordering and fitness, its wall time and evaluations,
+ * and the search's own counters, such as generations or climbs. If
+ * results.curve is set, the run's fitness over time is recorded too: within
+ * the record in JSON Lines, or in a separate "-curve.csv" file alongside a CSV
+ * results file.
+ *
+ * Records are copied once a run has finished and handed to a writer thread,
+ * which formats and appends them to the file, so a search never waits on the
+ * file. Files are appended to, so runs from many invocations build up in one
+ * file, and each is flushed whenever the writer has caught up.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+public final class ResultsSink implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResultsSink.class);
+
+    /**
+     * The header of a CSV results file.
+     */
+    private static final String HEADER = "run,search,seed,gamma,fitness,millis,evaluations,counters,ordering,config";
+
+    /**
+     * The header of a CSV curve file.
+     */
+    private static final String CURVE_HEADER = "run,millis,evaluations,best,average";
+
+    /**
+     * The sinks by results file, started on first use.
+     */
+    private static final Map<Path, ResultsSink> SINKS = new ConcurrentHashMap<>();
+
+    /**
+     * The results file.
+     */
+    private final Path path;
+
+    /**
+     * Whether records are written as CSV rather than JSON Lines.
+     */
+    private final boolean csv;
+
+    /**
+     * The records waiting to be written.
+     */
+    private final BlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * The number of the next run to be recorded.
+     */
+    private final AtomicLong runs = new AtomicLong(1);
+
+    /**
+     * The number of the next run to be written, which the shutdown hook waits
+     * on.
+     */
+    private final AtomicLong written = new AtomicLong(1);
+
+    /**
+     * Constructor.
+     *
+     * @param path the results file
+     */
+    private ResultsSink(Path path) {
+        this.path = path;
+        this.csv = path.getFileName().toString().endsWith(".csv");
+    }
+
+    /**
+     * Records a finished run in the results file given by the properties, if
+     * any.
+     *
+     * @param search the search that ran
+     * @param props the properties of the run
+     * @param seed the seed of the run's random stream when it started
+     * @param gamma the gamma of the run's random stream
+     * @param result the result of the run
+     * @param control the control of the run
+     * @param millis the wall time of the run
+     */
+    public static void record(Search search, Properties props, long seed, long gamma, Result result,
+                              SearchControl control, long millis) {
+        String file = props.getProperty("results.file");
+        if (file == null)
+            return;
+        ResultsSink sink = SINKS.computeIfAbsent(Paths.get(file).toAbsolutePath().normalize(),
+                ResultsSink::start);
+        sink.queue.add(new Record(sink.runs.getAndIncrement(), search.getClass().getSimpleName(),
+                props, seed, gamma, result, control, millis));
+    }
+
+    /**
+     * Creates the sink of a results file and starts its writer thread,
+     * flushing the records left when the JVM exits.
+     *
+     * @param path the results file
+     * @return sink
+     */
+    private static ResultsSink start(Path path) {
+        ResultsSink sink = new ResultsSink(path);
+        Thread thread = new Thread(sink, "results-writer");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(sink::flush, "results-flush"));
+        return sink;
+    }
+
+    @Override
+    public void run() {
+        Path curvePath = path.resolveSibling(path.getFileName().toString().replaceFirst("\\.csv$", "")
+                + "-curve.csv");
+        Writer out = null;
+        Writer curves = null;
+        StringBuilder line = new StringBuilder();
+        try {
+            out = open(path, csv ? HEADER : null);
+            while (true) {
+                Record record = queue.take();
+                line.setLength(0);
+                if (csv) {
+                    record.csv(line);
+                    if (record.curve != null) {
+                        if (curves == null)
+                            curves = open(curvePath, CURVE_HEADER);
+                        StringBuilder points = new StringBuilder();
+                        record.csvCurve(points);
+                        curves.write(points.toString());
+                    }
+                } else {
+                    record.json(line);
+                }
+                out.write(line.append(System.lineSeparator()).toString());
+                if (queue.isEmpty()) {
+                    out.flush();
+                    if (curves != null)
+                        curves.flush();
+                }
+                written.incrementAndGet();
+            }
+        } catch (IOException e) {
+            LOGGER.error("Could not write results to " + path, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close(out);
+            close(curves);
+        }
+    }
+
+    /**
+     * Opens a file for appending, writing the header if it is new.
+     *
+     * @param file the file to open
+     * @param header the header of a new file, or null
+     * @return writer
+     * @throws IOException if the file cannot be opened
+     */
+    private static Writer open(Path file, String header) throws IOException {
+        boolean fresh = !Files.exists(file) || Files.size(file) == 0;
+        BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (fresh && header != null) {
+            writer.write(header);
+            writer.newLine();
+        }
+        return writer;
+    }
+
+    /**
+     * Closes a writer, if open.
+     *
+     * @param writer the writer to close, or null
+     */
+    private static void close(Writer writer) {
+        if (writer == null)
+            return;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            LOGGER.error("Could not close results", e);
+        }
+    }
+
+    /**
+     * Waits a short while for the writer to write the records so far.
+     */
+    private void flush() {
+        long target = runs.get();
+        long deadline = System.currentTimeMillis() + 1000;
+        while (written.get() < target && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Appends a string as a CSV field, quoted if needed.
+     *
+     * @param sb the builder to append to
+     * @param value the field
+     */
+    private static void csvField(StringBuilder sb, String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            sb.append(value);
+            return;
+        }
+        sb.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    /**
+     * Appends a string as a JSON string.
+     *
+     * @param sb the builder to append to
+     * @param value the string
+     */
+    private static void jsonString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if (c < 0x20)
+                sb.append(String.format("\\u%04x", (int) c));
+            else
+                sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Appends a number as JSON, where NaN is null.
+     *
+     * @param sb the builder to append to
+     * @param value the number
+     */
+    private static void jsonNumber(StringBuilder sb, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            sb.append("null");
+        else
+            sb.append(value);
+    }
+
+    /**
+     * A copy of everything recorded of a run.
+     */
+    private static final class Record {
+        /**
+         * The number of the run in the results file.
+         */
+        final long run;
+
+        /**
+         * The name of the search.
+         */
+        final String search;
+
+        /**
+         * The properties of the run, sorted by name.
+         */
+        final Map<String, String> config = new TreeMap<>();
+
+        /**
+         * The seed of the run's random stream.
+         */
+        final long seed;
+
+        /**
+         * The gamma of the run's random stream.
+         */
+        final long gamma;
+
+        /**
+         * The names of the tests in the best ordering.
+         */
+        final List<String> ordering = new ArrayList<>();
+
+        /**
+         * The fitness of the best ordering.
+         */
+        final double fitness;
+
+        /**
+         * The wall time of the run.
+         */
+        final long millis;
+
+        /**
+         * The evaluations the run performed.
+         */
+        final long evaluations;
+
+        /**
+         * The search's counters.
+         */
+        final Map<String, Integer> counters;
+
+        /**
+         * The points of the run's curve, or null.
+         */
+        final double[][] curve;
+
+        /**
+         * Constructor, copying the run.
+         *
+         * @param run the number of the run in the results file
+         * @param search the name of the search
+         * @param props the properties of the run
+         * @param seed the seed of the run's random stream
+         * @param gamma the gamma of the run's random stream
+         * @param result the result of the run
+         * @param control the control of the run
+         * @param millis the wall time of the run
+         */
+        Record(long run, String search, Properties props, long seed, long gamma, Result result,
+               SearchControl control, long millis) {
+            this.run = run;
+            this.search = search;
+            for (String name : props.stringPropertyNames())
+                config.put(name, props.getProperty(name));
+            this.seed = seed;
+            this.gamma = gamma;
+            for (TestCase test : result.getResult().getCandidate())
+                ordering.add(test.getTestName());
+            this.fitness = result.getResult().getFitness();
+            this.millis = millis;
+            this.evaluations = control.getEvaluations();
+            this.counters = new LinkedHashMap<>(result.getCounters());
+            this.curve = control.getCurve() == null ? null : control.getCurve().points();
+        }
+
+        /**
+         * Formats this record as a CSV row.
+         *
+         * @param sb the builder to append to
+         */
+        void csv(StringBuilder sb) {
+            sb.append(run).append(',').append(search).append(',').append(seed).append(',')
+                    .append(gamma).append(',').append(fitness).append(',').append(millis).append(',')
+                    .append(evaluations).append(',');
+            StringBuilder field = new StringBuilder();
+            for (Map.Entry<String, Integer> counter : counters.entrySet()) {
+                if (field.length() > 0)
+                    field.append(';');
+                field.append(counter.getKey()).append('=').append(counter.getValue());
+            }
+            csvField(sb, field.toString());
+            sb.append(',');
+            csvField(sb, String.join(" ", ordering));
+            sb.append(',');
+            field.setLength(0);
+            for (Map.Entry<String, String> prop : config.entrySet()) {
+                if (field.length() > 0)
+                    field.append(';');
+                field.append(prop.getKey()).append('=').append(prop.getValue());
+            }
+            csvField(sb, field.toString());
+        }
+
+        /**
+         * Formats the points of this record's curve as CSV rows.
+         *
+         * @param sb the builder to append to
+         */
+        void csvCurve(StringBuilder sb) {
+            for (double[] point : curve) {
+                sb.append(run).append(',').append((long) point[0]).append(',').append((long) point[1])
+                        .append(',').append(point[2]).append(',');
+                if (!Double.isNaN(point[3]))
+                    sb.append(point[3]);
+                sb.append(System.lineSeparator());
+            }
+        }
+
+        /**
+         * Formats this record as a JSON object.
+         *
+         * @param sb the builder to append to
+         */
+        void json(StringBuilder sb) {
+            sb.append("{\"run\": ").append(run).append(", \"search\": ");
+            jsonString(sb, search);
+            sb.append(", \"seed\": ").append(seed).append(", \"gamma\": ").append(gamma)
+                    .append(", \"fitness\": ");
+            jsonNumber(sb, fitness);
+            sb.append(", \"millis\": ").append(millis)
+                    .append(", \"evaluations\": ").append(evaluations).append(", \"counters\": {");
+            boolean first = true;
+            for (Map.Entry<String, Integer> counter : counters.entrySet()) {
+                if (!first)
+                    sb.append(", ");
+                first = false;
+                jsonString(sb, counter.getKey());
+                sb.append(": ").append(counter.getValue());
+            }
+            sb.append("}, \"ordering\": [");
+            for (int i = 0; i < ordering.size(); i++) {
+                if (i > 0)
+                    sb.append(", ");
+                jsonString(sb, ordering.get(i));
+            }
+            sb.append("], \"config\": {");
+            first = true;
+            for (Map.Entry<String, String> prop : config.entrySet()) {
+                if (!first)
+                    sb.append(", ");
+                first = false;
+                jsonString(sb, prop.getKey());
+                sb.append(": ");
+                jsonString(sb, prop.getValue());
+            }
+            sb.append('}');
+            if (curve != null) {
+                sb.append(", \"curve\": [");
+                for (int i = 0; i < curve.length; i++) {
+                    if (i > 0)
+                        sb.append(", ");
+                    sb.append('[').append((long) curve[i][0]).append(", ").append((long) curve[i][1])
+                            .append(", ");
+                    jsonNumber(sb, curve[i][2]);
+                    sb.append(", ");
+                    jsonNumber(sb, curve[i][3]);
+                    sb.append(']');
+                }
+                sb.append(']');
+            }
+            sb.append('}');
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package com.aidanogrady.cs547.assignment02.search;
 
+import com.aidanogrady.cs547.assignment02.metrics.SearchMetrics;
+import com.aidanogrady.cs547.assignment02.model.Rng;
 import com.aidanogrady.cs547.assignment02.model.TestCase;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Search defines how the various search algorithms are utilised.
@@ -13,12 +20,143 @@ import java.util.Properties;
  */
 public interface Search {
     /**
-     * Searches the given test cases for the best solution.
+     * Searches the given test cases for the best solution. Implementations
+     * must be safe to call from several threads at once, and must draw all of
+     * their randomness from the given stream so that runs can be reproduced.
      *
      * @param props the properties of the search
      * @param cases the test cases to be used
+     * @param rng the random stream of the search
+     * @param control the budget of the search, notified of each improvement
      */
-    Result search(Properties props, List<TestCase> cases);
+    Result search(Properties props, List<TestCase> cases, Rng rng, SearchControl control);
+
+    /**
+     * Searches the given test cases for the best solution, within the budget
+     * given by the budget.millis and budget.evaluations properties if any,
+     * recording the run in the results file if one is given.
+     *
+     * @param props the properties of the search
+     * @param cases the test cases to be used
+     * @param rng the random stream of the search
+     */
+    default Result search(Properties props, List<TestCase> cases, Rng rng) {
+        return searchAndRecord(props, cases, rng, SearchControl.fromProperties(props));
+    }
+
+    /**
+     * Searches the given test cases for the best solution, then records the
+     * run in the results file given by the results.file property, if any.
+     *
+     * @param props the properties of the search
+     * @param cases the test cases to be used
+     * @param rng the random stream of the search
+     * @param control the budget of the search, notified of each improvement
+     * @return the result of the search
+     */
+    default Result searchAndRecord(Properties props, List<TestCase> cases, Rng rng, SearchControl control) {
+        long seed = rng.getSeed();
+        long gamma = rng.getGamma();
+        long time = System.currentTimeMillis();
+        Result result = search(props, cases, rng, control);
+        time = System.currentTimeMillis() - time;
+        ResultsSink.record(this, props, seed, gamma, result, control, time);
+        return result;
+    }
+
+    /**
+     * Searches the given test cases for the best solution, seeded by the seed
+     * property if given.
+     *
+     * @param props the properties of the search
+     * @param cases the test cases to be used
+     */
+    default Result search(Properties props, List<TestCase> cases) {
+        return search(props, cases, Rng.fromProperties(props));
+    }
+
+    /**
+     * Starts searching the given test cases on the given executor, seeded by
+     * the seed property if given. Improvements are reported to the control
+     * as they are found, and the best so far can be taken from it at any
+     * time. Cancelling the returned future cancels the control, so the search
+     * stops at its next check.
+     *
+     * @param props the properties of the search
+     * @param cases the test cases to be used
+     * @param control the budget of the search, notified of each improvement
+     * @param executor where to run the search
+     * @return the result of the search, once it stops
+     */
+    default CompletableFuture<Result> searchAsync(Properties props, List<TestCase> cases,
+                                                  SearchControl control, Executor executor) {
+        Rng rng = Rng.fromProperties(props);
+        CompletableFuture<Result> future = CompletableFuture.supplyAsync(
+                () -> searchAndRecord(props, cases, rng, control), executor);
+        future.whenComplete((result, e) -> {
+            if (e instanceof CancellationException)
+                control.cancel();
+        });
+        return future;
+    }
+
+    /**
+     * Starts searching the given test cases on a thread of its own, seeded by
+     * the seed property if given.
+     *
+     * @param props the properties of the search
+     * @param cases the test cases to be used
+     * @param control the budget of the search, notified of each improvement
+     * @return the result of the search, once it stops
+     * @see #searchAsync(Properties, List, SearchControl, Executor)
+     */
+    default CompletableFuture<Result> searchAsync(Properties props, List<TestCase> cases, SearchControl control) {
+        return searchAsync(props, cases, control, task -> {
+            Thread thread = new Thread(task, getClass().getSimpleName());
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    /**
+     * Returns a new instance of each search by the name it is requested by:
+     * random, hillclimb and ga.
+     *
+     * @return searches by name
+     */
+    static Map<String, Search> byName() {
+        Map<String, Search> searches = new LinkedHashMap<>();
+        for (String name : new String[]{"random", "hillclimb", "ga"})
+            searches.put(name, byName(name));
+        return searches;
+    }
+
+    /**
+     * Returns a new instance of the search requested by the given name, so
+     * that only the search used publishes metrics.
+     *
+     * @param name random, hillclimb or ga
+     * @return search, or null if no search has the name
+     */
+    static Search byName(String name) {
+        switch (name) {
+            case "random":
+                return new RandomSearch();
+            case "hillclimb":
+                return new HillClimbingSearch();
+            case "ga":
+                return new GeneticAlgorithmSearch();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns the live metrics of this search, which every run records into.
+     *
+     * @return metrics
+     */
+    SearchMetrics getMetrics();
 
     /**
      * Runs a benchmark, performing multiple tests and seeing the results.
@@ -26,5 +164,7 @@ public interface Search {
      * @param props the properties of the benchmark
      * @param cases the test cases to be used
      */
-    void benchmark(Properties props, List<TestCase> cases);
+    default void benchmark(Properties props, List<TestCase> cases) {
+        new Benchmark(props).run(this, cases);
+    }
 }
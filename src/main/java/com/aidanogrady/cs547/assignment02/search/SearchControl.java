@@ -0,0 +1,190 @@
+package com.aidanogrady.cs547.assignment02.search;
+
+import com.aidanogrady.cs547.assignment02.model.TCChromosome;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Controls a single run of a search from outside it: the run stops at its
+ * deadline, after its maximum number of fitness evaluations, or when
+ * cancelled, whichever comes first, and reports each new best chromosome as
+ * it is found. Searches check whether to stop between steps, so a run may
+ * overrun its budget by up to one step, such as a generation.
+ *
+ * A control may also keep a downsampled curve of the run's fitness over time,
+ * for the results file.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+public final class SearchControl {
+    /**
+     * When the run must stop, from System.nanoTime, or Long.MAX_VALUE.
+     */
+    private final long deadline;
+
+    /**
+     * Whether the run has a deadline.
+     */
+    private final boolean timed;
+
+    /**
+     * The number of evaluations after which the run must stop, or
+     * Long.MAX_VALUE.
+     */
+    private final long maxEvaluations;
+
+    /**
+     * Notified of each new best chromosome, or null.
+     */
+    private final ImprovementListener listener;
+
+    /**
+     * The number of fitness evaluations performed so far.
+     */
+    private final LongAdder evaluations = new LongAdder();
+
+    /**
+     * Whether the run has been cancelled.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * A copy of the best chromosome found so far, or null.
+     */
+    private volatile TCChromosome best;
+
+    /**
+     * The fitness of the run over time, or null if not kept.
+     */
+    private Curve curve;
+
+    /**
+     * Constructor.
+     *
+     * @param timeout how long the run may take in milliseconds, or 0 for no
+     * limit
+     * @param maxEvaluations the number of evaluations the run may perform, or
+     * 0 for no limit
+     * @param listener notified of each new best chromosome, or null
+     */
+    public SearchControl(long timeout, long maxEvaluations, ImprovementListener listener) {
+        this.timed = timeout > 0;
+        this.deadline = timed ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : Long.MAX_VALUE;
+        this.maxEvaluations = maxEvaluations > 0 ? maxEvaluations : Long.MAX_VALUE;
+        this.listener = listener;
+    }
+
+    /**
+     * Constructs a control with the budget given by the budget.millis and
+     * budget.evaluations properties, if any, and no listener. The deadline
+     * counts from now. A curve of up to results.curve.points points is kept
+     * if results.curve is set.
+     *
+     * @param props the properties that may give a budget
+     * @return control
+     */
+    public static SearchControl fromProperties(Properties props) {
+        SearchControl control = new SearchControl(Long.parseLong(props.getProperty("budget.millis", "0")),
+                Long.parseLong(props.getProperty("budget.evaluations", "0")), null);
+        if (Boolean.parseBoolean(props.getProperty("results.curve", "false")))
+            control.curve = new Curve(Integer.parseInt(props.getProperty("results.curve.points", "100")));
+        return control;
+    }
+
+    /**
+     * Returns whether the run should stop, having been cancelled or run out
+     * of budget.
+     *
+     * @return true if the run should stop
+     */
+    public boolean shouldStop() {
+        return cancelled
+                || (maxEvaluations != Long.MAX_VALUE && evaluations.sum() >= maxEvaluations)
+                || (timed && System.nanoTime() - deadline >= 0);
+    }
+
+    /**
+     * Asks the run to stop at its next check. The run still completes with
+     * the best chromosome found so far.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns whether the run has been cancelled.
+     *
+     * @return true if cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Records fitness evaluations performed by the run.
+     *
+     * @param n the number of evaluations
+     */
+    public void evaluated(long n) {
+        evaluations.add(n);
+    }
+
+    /**
+     * Returns the number of fitness evaluations performed so far.
+     *
+     * @return evaluations
+     */
+    public long getEvaluations() {
+        return evaluations.sum();
+    }
+
+    /**
+     * Records a chromosome the run found, notifying the listener if it is
+     * better than the best so far. The chromosome is copied, as pooled
+     * chromosomes are overwritten.
+     *
+     * @param candidate the chromosome found
+     */
+    public synchronized void improved(TCChromosome candidate) {
+        if (best != null && candidate.getFitness() >= best.getFitness())
+            return;
+        best = candidate.copy();
+        if (listener != null)
+            listener.improved(best, evaluations.sum());
+    }
+
+    /**
+     * Records the progress of the run on its curve, if kept. Searches call
+     * this after each step that may have changed the fitness, such as a
+     * generation or an improvement.
+     *
+     * @param best the best fitness so far
+     * @param average the average fitness of a population, or NaN
+     */
+    public void progressed(double best, double average) {
+        if (curve != null)
+            curve.add(evaluations.sum(), best, average);
+    }
+
+    /**
+     * Returns the curve of the run's fitness over time.
+     *
+     * @return curve, or null if not kept
+     */
+    Curve getCurve() {
+        return curve;
+    }
+
+    /**
+     * Returns the best chromosome found so far, which can be used as soon as
+     * the budget runs out.
+     *
+     * @return copy of the best chromosome, or null if none has been found
+     */
+    public TCChromosome getBest() {
+        return best;
+    }
+}
@@ -0,0 +1,411 @@
+package com.aidanogrady.cs547.assignment02.search;
+
+import com.aidanogrady.cs547.assignment02.model.Rng;
+import com.aidanogrady.cs547.assignment02.model.SuiteReduction;
+import com.aidanogrady.cs547.assignment02.model.TestCase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tunes the properties of a search by trying many values of them. Each
+ * sweep.X property gives the values of property X to try, either as a comma
+ * separated list or as a range "from..to". A grid design tries every
+ * combination, taking sweep.points evenly spaced values from each range,
+ * while a random design tries sweep.samples combinations drawn at random.
+ *
+ * Combinations are tuned by successive halving: each round runs every
+ * surviving combination benchmark more times, all at once on a pool of
+ * sweep.threads threads, and only the fittest 1 / sweep.eta of them survive to
+ * the next round, until one is left. Poor combinations are dropped after a few
+ * runs, leaving most of the runs for telling good ones apart. Every run is
+ * given its own random stream split from the seed, so a sweep can be repeated.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+public class Sweep {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Sweep.class);
+
+    /**
+     * The prefix of the properties giving values to try.
+     */
+    private static final String PREFIX = "sweep.";
+
+    /**
+     * The sweep properties controlling the sweep, rather than giving values.
+     */
+    private static final List<String> CONTROLS = Arrays.asList(
+            "design", "points", "samples", "eta", "threads", "algorithm");
+
+    /**
+     * The properties every combination starts from.
+     */
+    private final Properties props;
+
+    /**
+     * The values to try of each property swept.
+     */
+    private final Map<String, String> ranges = new LinkedHashMap<>();
+
+    /**
+     * The number of runs of each surviving combination per round.
+     */
+    private final int runs;
+
+    /**
+     * The number of threads to perform the runs on.
+     */
+    private final int threads;
+
+    /**
+     * The fraction of combinations dropped each round is 1 - 1 / eta.
+     */
+    private final int eta;
+
+    /**
+     * Constructor.
+     *
+     * @param props the properties of the sweep
+     */
+    public Sweep(Properties props) {
+        this.props = props;
+        for (String name : new TreeSet<>(props.stringPropertyNames())) {
+            if (name.startsWith(PREFIX) && !CONTROLS.contains(name.substring(PREFIX.length())))
+                ranges.put(name.substring(PREFIX.length()), props.getProperty(name));
+        }
+        if (ranges.isEmpty())
+            throw new IllegalArgumentException("no sweep.* properties give values to try");
+
+        this.runs = Integer.parseInt(props.getProperty("benchmark"));
+        String threads = props.getProperty("sweep.threads");
+        this.threads = threads == null
+                ? Runtime.getRuntime().availableProcessors()
+                : Integer.parseInt(threads);
+        this.eta = Integer.parseInt(props.getProperty("sweep.eta", "2"));
+        if (eta < 2)
+            throw new IllegalArgumentException("sweep.eta must be at least 2");
+        // Combinations share properties, so their checkpoints would clash.
+        if (props.getProperty("ga.checkpoint") != null)
+            throw new IllegalArgumentException("ga.checkpoint cannot be used in a sweep");
+    }
+
+    /**
+     * Returns the search named by the sweep.algorithm property, ga by
+     * default.
+     *
+     * @return search
+     */
+    public Search getSearch() {
+        String algorithm = props.getProperty("sweep.algorithm", "ga");
+        Search search = Search.byName(algorithm);
+        if (search == null)
+            throw new IllegalArgumentException("unknown sweep.algorithm " + algorithm);
+        return search;
+    }
+
+    /**
+     * Sweeps the given search over the test cases.
+     *
+     * @param search the search to tune
+     * @param cases the test cases to be used
+     * @return every combination tried, fittest first
+     */
+    public List<Combination> run(Search search, List<TestCase> cases) {
+        Rng root = Rng.fromProperties(props);
+        LOGGER.info("Seed: " + root.getSeed());
+        List<Combination> all = design(root.split());
+
+        Map<String, List<TestCase>> suites = new HashMap<>();
+        for (Combination combination : all) {
+            Properties p = combination.props;
+            List<TestCase> suite = cases;
+            if (Boolean.parseBoolean(p.getProperty("reduce", "true"))) {
+                int size = Integer.parseInt(p.getProperty("size"));
+                suite = suites.computeIfAbsent("size " + size,
+                        k -> SuiteReduction.reduce(cases, size).getTestCases());
+            }
+            combination.cases = suite;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Combination> survivors = new ArrayList<>(all);
+            for (int round = 1; round == 1 || survivors.size() > 1; round++) {
+                LOGGER.info("Round " + round + ": " + survivors.size() + " combinations, "
+                        + survivors.size() * runs + " runs");
+                List<Future<?>> futures = new ArrayList<>();
+                for (Combination combination : survivors) {
+                    combination.round = round;
+                    for (int i = 0; i < runs; i++) {
+                        Rng rng = root.split();
+                        futures.add(executor.submit(() -> combination.run(search, rng)));
+                    }
+                }
+                for (Future<?> future : futures)
+                    future.get();
+
+                survivors.sort(Comparator.comparingDouble(Combination::getFitness));
+                survivors = new ArrayList<>(survivors.subList(0, (survivors.size() + eta - 1) / eta));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.info("Sweep interrupted");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Sweep run failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Combinations that lasted longer were measured more, so rank first.
+        all.sort(Comparator.comparingInt((Combination c) -> -c.round)
+                .thenComparingDouble(Combination::getFitness));
+        return all;
+    }
+
+    /**
+     * Expands the ranges into the combinations to try.
+     *
+     * @param rng the random stream to draw a random design from
+     * @return combinations
+     */
+    private List<Combination> design(Rng rng) {
+        String design = props.getProperty("sweep.design", "grid");
+        List<Map<String, String>> designs = new ArrayList<>();
+        if (design.equals("grid")) {
+            int points = Integer.parseInt(props.getProperty("sweep.points", "3"));
+            designs.add(new LinkedHashMap<>());
+            for (Map.Entry<String, String> range : ranges.entrySet()) {
+                List<Map<String, String>> expanded = new ArrayList<>();
+                for (String value : values(range.getValue(), points)) {
+                    for (Map<String, String> values : designs) {
+                        Map<String, String> copy = new LinkedHashMap<>(values);
+                        copy.put(range.getKey(), value);
+                        expanded.add(copy);
+                    }
+                }
+                designs = expanded;
+            }
+        } else if (design.equals("random")) {
+            int samples = Integer.parseInt(props.getProperty("sweep.samples", "16"));
+            for (int i = 0; i < samples; i++) {
+                Map<String, String> values = new LinkedHashMap<>();
+                for (Map.Entry<String, String> range : ranges.entrySet())
+                    values.put(range.getKey(), sample(range.getValue(), rng));
+                designs.add(values);
+            }
+        } else {
+            throw new IllegalArgumentException("sweep.design must be grid or random");
+        }
+
+        List<Combination> combinations = new ArrayList<>();
+        for (Map<String, String> values : designs)
+            combinations.add(new Combination(props, values));
+        return combinations;
+    }
+
+    /**
+     * Returns the values of a range for a grid design.
+     *
+     * @param range the list or range of values
+     * @param points the number of values to take from a range
+     * @return values
+     */
+    private static List<String> values(String range, int points) {
+        int dots = range.indexOf("..");
+        if (dots < 0) {
+            List<String> values = new ArrayList<>();
+            for (String value : range.split(","))
+                values.add(value.trim());
+            return values;
+        }
+
+        String from = range.substring(0, dots).trim();
+        String to = range.substring(dots + 2).trim();
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < points; i++) {
+            double t = points == 1 ? 0 : (double) i / (points - 1);
+            String value = interpolate(from, to, t);
+            if (!values.contains(value))
+                values.add(value);
+        }
+        return values;
+    }
+
+    /**
+     * Returns a value of a range drawn at random, for a random design.
+     *
+     * @param range the list or range of values
+     * @param rng the random stream to draw from
+     * @return value
+     */
+    private static String sample(String range, Rng rng) {
+        int dots = range.indexOf("..");
+        if (dots < 0) {
+            String[] values = range.split(",");
+            return values[rng.nextInt(values.length)].trim();
+        }
+        return interpolate(range.substring(0, dots).trim(), range.substring(dots + 2).trim(),
+                rng.nextDouble());
+    }
+
+    /**
+     * Returns the value a fraction of the way along a range. The value is a
+     * whole number if both ends of the range are.
+     *
+     * @param from the start of the range
+     * @param to the end of the range
+     * @param t the fraction, from 0 to 1
+     * @return value
+     */
+    private static String interpolate(String from, String to, double t) {
+        try {
+            if (!from.contains(".") && !to.contains(".")) {
+                long low = Long.parseLong(from);
+                return String.valueOf(low + Math.round(t * (Long.parseLong(to) - low)));
+            }
+            double low = Double.parseDouble(from);
+            double value = low + t * (Double.parseDouble(to) - low);
+            return String.valueOf(Math.round(value * 1e6) / 1e6);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid range " + from + ".." + to);
+        }
+    }
+
+    /**
+     * Formats the given combinations as a table of fitness against time.
+     *
+     * @param combinations the combinations, fittest first
+     * @return table
+     */
+    public static String table(List<Combination> combinations) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%4s  %-20s  %10s  %5s  %5s  %s%n",
+                "Rank", "Fitness", "Time (ms)", "Runs", "Round", "Properties"));
+        int rank = 1;
+        for (Combination combination : combinations) {
+            sb.append(String.format("%4d  %-20s  %10.1f  %5d  %5d  %s%n", rank++,
+                    combination.getFitness(), combination.getTime(), combination.getRuns(),
+                    combination.round, combination.values));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A combination of values of the properties swept, and how it has fared.
+     */
+    public static final class Combination {
+        /**
+         * The values of the properties swept.
+         */
+        private final Map<String, String> values;
+
+        /**
+         * The properties of the search, with the values applied.
+         */
+        private final Properties props;
+
+        /**
+         * The test cases to search, reduced for the combination's size.
+         */
+        private List<TestCase> cases;
+
+        /**
+         * The last round the combination was run in.
+         */
+        private int round;
+
+        /**
+         * The total fitness of its runs.
+         */
+        private final DoubleAdder fitness = new DoubleAdder();
+
+        /**
+         * The total time of its runs, in milliseconds.
+         */
+        private final LongAdder time = new LongAdder();
+
+        /**
+         * The number of its runs.
+         */
+        private final LongAdder runs = new LongAdder();
+
+        /**
+         * Constructor.
+         *
+         * @param base the properties every combination starts from
+         * @param values the values of the properties swept
+         */
+        private Combination(Properties base, Map<String, String> values) {
+            this.values = values;
+            this.props = new Properties();
+            props.putAll(base);
+            props.putAll(values);
+        }
+
+        /**
+         * Runs the search once with this combination.
+         *
+         * @param search the search to run
+         * @param rng the random stream of the run
+         */
+        private void run(Search search, Rng rng) {
+            long start = System.currentTimeMillis();
+            Result result = search.search(props, cases, rng);
+            time.add(System.currentTimeMillis() - start);
+            fitness.add(result.getResult().getFitness());
+            runs.increment();
+        }
+
+        /**
+         * Returns the values of the properties swept.
+         *
+         * @return values by property
+         */
+        public Map<String, String> getValues() {
+            return values;
+        }
+
+        /**
+         * Returns the average fitness of its runs.
+         *
+         * @return fitness
+         */
+        public double getFitness() {
+            return fitness.sum() / Math.max(1, runs.sum());
+        }
+
+        /**
+         * Returns the average time of its runs.
+         *
+         * @return milliseconds
+         */
+        public double getTime() {
+            return (double) time.sum() / Math.max(1, runs.sum());
+        }
+
+        /**
+         * Returns the number of its runs.
+         *
+         * @return runs
+         */
+        public long getRuns() {
+            return runs.sum();
+        }
+    }
+}
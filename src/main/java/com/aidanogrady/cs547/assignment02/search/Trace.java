@@ -0,0 +1,100 @@
+package com.aidanogrady.cs547.assignment02.search;
+
+import com.aidanogrady.cs547.assignment02.model.TCChromosome;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The trace of a single search run, recording the best chromosome at sampled
+ * steps of the search. Steps are sampled every trace.every steps, and whenever
+ * the best improves if trace.improvements is set. Sampled steps are handed to
+ * a background writer and formatted there, so a search only pays for a
+ * sampling check on each step, and for copying the best chromosome on sampled
+ * ones.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+public final class Trace {
+    /**
+     * The number of the next run to be traced.
+     */
+    private static final AtomicInteger RUNS = new AtomicInteger(1);
+
+    /**
+     * The number of this run.
+     */
+    private final int run;
+
+    /**
+     * What a step of the search is called.
+     */
+    private final String label;
+
+    /**
+     * Every how many steps are sampled, or 0 for none.
+     */
+    private final int every;
+
+    /**
+     * Whether steps improving the best are sampled.
+     */
+    private final boolean improvements;
+
+    /**
+     * Constructor.
+     *
+     * @param props the properties that may configure sampling
+     * @param label what a step of the search is called
+     */
+    public Trace(Properties props, String label) {
+        this.label = label;
+        this.every = Integer.parseInt(props.getProperty("trace.every", "0"));
+        this.improvements = Boolean.parseBoolean(props.getProperty("trace.improvements", "true"));
+        this.run = isEnabled() ? RUNS.getAndIncrement() : 0;
+    }
+
+    /**
+     * Returns whether any steps are sampled.
+     *
+     * @return true if tracing
+     */
+    public boolean isEnabled() {
+        return every > 0 || improvements;
+    }
+
+    /**
+     * Returns whether the given step is sampled. Anything only needed by the
+     * trace, such as an average fitness, should only be worked out for
+     * sampled steps.
+     *
+     * @param step the step of the search
+     * @param improved whether the step improved the best
+     * @return true if the step should be recorded
+     */
+    public boolean sample(long step, boolean improved) {
+        return (improved && improvements) || (every > 0 && step % every == 0);
+    }
+
+    /**
+     * Records a sampled step.
+     *
+     * @param step the step of the search
+     * @param best the best chromosome at the step
+     */
+    public void record(long step, TCChromosome best) {
+        record(step, best, Double.NaN);
+    }
+
+    /**
+     * Records a sampled step of a search with a population.
+     *
+     * @param step the step of the search
+     * @param best the best chromosome at the step
+     * @param average the average fitness of the population
+     */
+    public void record(long step, TCChromosome best, double average) {
+        TraceWriter.INSTANCE.record(run, label, step, best, average);
+    }
+}
@@ -0,0 +1,250 @@
+package com.aidanogrady.cs547.assignment02.search;
+
+import com.aidanogrady.cs547.assignment02.model.TCChromosome;
+import com.aidanogrady.cs547.assignment02.model.TestCase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes trace events from every search to the trace log on a background
+ * thread. Searches copy the raw values of an event into a preallocated slot of
+ * a ring buffer, and the writer thread formats and logs them, so recording an
+ * event neither allocates nor waits on the log. When the buffer is full, new
+ * events are dropped rather than holding up the search, and the number dropped
+ * is logged.
+ *
+ * The buffer takes events from any number of threads: each claims a sequence
+ * number, fills the slot it maps to and then publishes the sequence in that
+ * slot, which the writer waits for before reading the slot.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+final class TraceWriter implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TraceWriter.class);
+
+    /**
+     * The number of events the buffer holds, being a power of two.
+     */
+    private static final int CAPACITY = 1 << 12;
+
+    /**
+     * How long the writer sleeps when the buffer is empty.
+     */
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * How long the writer is given to empty the buffer when the JVM exits.
+     */
+    private static final long FLUSH_MILLIS = 1000;
+
+    /**
+     * The writer of all traces, started on first use.
+     */
+    static final TraceWriter INSTANCE = start();
+
+    /**
+     * The slots of the buffer.
+     */
+    private final Event[] ring = new Event[CAPACITY];
+
+    /**
+     * The sequence number last published in each slot, or -1.
+     */
+    private final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+
+    /**
+     * The next sequence number to be claimed.
+     */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /**
+     * The next sequence number to be written. Only the writer thread updates
+     * it.
+     */
+    private volatile long written;
+
+    /**
+     * The number of events dropped since they were last reported.
+     */
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Not to be instantiated outside of start.
+     */
+    private TraceWriter() {
+        for (int i = 0; i < CAPACITY; i++) {
+            ring[i] = new Event();
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * Creates the writer and starts its thread, flushing the buffer when the
+     * JVM exits.
+     *
+     * @return writer
+     */
+    private static TraceWriter start() {
+        TraceWriter writer = new TraceWriter();
+        Thread thread = new Thread(writer, "trace-writer");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(writer::flush, "trace-flush"));
+        return writer;
+    }
+
+    /**
+     * Adds an event to the buffer, or drops it if the buffer is full.
+     *
+     * @param run the number of the run the event is from
+     * @param label what a step of the search is called
+     * @param step the step of the search
+     * @param best the best chromosome at the step
+     * @param average the average fitness at the step, or NaN
+     */
+    void record(int run, String label, long step, TCChromosome best, double average) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - written >= CAPACITY) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & (CAPACITY - 1);
+        ring[slot].fill(run, label, step, best, average);
+        published.set(slot, sequence);
+    }
+
+    @Override
+    public void run() {
+        StringBuilder message = new StringBuilder();
+        while (true) {
+            long sequence = written;
+            int slot = (int) sequence & (CAPACITY - 1);
+            if (published.get(slot) != sequence) {
+                if (claimed.get() > sequence)
+                    Thread.yield(); // An event is being filled in.
+                else
+                    LockSupport.parkNanos(IDLE_NANOS);
+                continue;
+            }
+
+            message.setLength(0);
+            ring[slot].format(message);
+            written = sequence + 1;
+            LOGGER.debug(message.toString());
+
+            long lost = dropped.sumThenReset();
+            if (lost > 0)
+                LOGGER.debug("Trace buffer full, dropped " + lost + " events.");
+        }
+    }
+
+    /**
+     * Waits a short while for the writer to write the events claimed so far.
+     */
+    private void flush() {
+        long target = claimed.get();
+        long deadline = System.currentTimeMillis() + FLUSH_MILLIS;
+        while (written < target && System.currentTimeMillis() < deadline)
+            LockSupport.parkNanos(IDLE_NANOS);
+    }
+
+    /**
+     * A slot of the buffer, holding the raw values of an event until it is
+     * formatted.
+     */
+    private static final class Event {
+        /**
+         * The number of the run the event is from.
+         */
+        int run;
+
+        /**
+         * What a step of the search is called.
+         */
+        String label;
+
+        /**
+         * The step of the search.
+         */
+        long step;
+
+        /**
+         * The test suite the genes index.
+         */
+        List<TestCase> suite;
+
+        /**
+         * A copy of the genes of the best chromosome, grown as needed.
+         */
+        int[] genes = new int[0];
+
+        /**
+         * The number of genes copied.
+         */
+        int size;
+
+        /**
+         * The fitness of the best chromosome.
+         */
+        double fitness;
+
+        /**
+         * The average fitness, or NaN.
+         */
+        double average;
+
+        /**
+         * Copies the values of an event into this slot. The genes are copied
+         * because pooled chromosomes are overwritten.
+         *
+         * @param run the number of the run the event is from
+         * @param label what a step of the search is called
+         * @param step the step of the search
+         * @param best the best chromosome at the step
+         * @param average the average fitness at the step, or NaN
+         */
+        void fill(int run, String label, long step, TCChromosome best, double average) {
+            this.run = run;
+            this.label = label;
+            this.step = step;
+            this.suite = best.getSuite();
+            this.size = best.size();
+            if (genes.length < size)
+                genes = new int[size];
+            System.arraycopy(best.getGenes(), 0, genes, 0, size);
+            this.fitness = best.getFitness();
+            this.average = average;
+        }
+
+        /**
+         * Formats this event in the same form as chromosomes are printed.
+         *
+         * @param message the builder to append to
+         */
+        void format(StringBuilder message) {
+            message.append("Run ").append(run).append(' ')
+                    .append(label).append(' ').append(step).append(". Best: [");
+            for (int i = 0; i < size; i++) {
+                if (i > 0)
+                    message.append(", ");
+                message.append(suite.get(genes[i]).getTestName());
+            }
+            message.append("] (").append(fitness).append(')');
+            if (!Double.isNaN(average))
+                message.append(" Average: ").append(average);
+            suite = null;
+        }
+    }
+}
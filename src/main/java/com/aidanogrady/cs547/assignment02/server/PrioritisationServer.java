@@ -0,0 +1,391 @@
+package com.aidanogrady.cs547.assignment02.server;
+
+import com.aidanogrady.cs547.assignment02.metrics.Histogram;
+import com.aidanogrady.cs547.assignment02.model.Rng;
+import com.aidanogrady.cs547.assignment02.model.SuiteReduction;
+import com.aidanogrady.cs547.assignment02.model.TCChromosome;
+import com.aidanogrady.cs547.assignment02.model.TestCase;
+import com.aidanogrady.cs547.assignment02.search.Result;
+import com.aidanogrady.cs547.assignment02.search.Search;
+import com.aidanogrady.cs547.assignment02.search.SearchControl;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serves prioritisation requests over HTTP on the loopback interface, so that
+ * fault matrices are loaded once and searched by code the JIT has already
+ * compiled, rather than by a new JVM per ordering.
+ *
+ * A request to /prioritise names the dataset, and may give the algorithm
+ * (random, hillclimb or ga), size, budget in milliseconds and evaluations,
+ * and seed, with anything not given taken from the server's properties. It
+ * is answered with the best ordering found as JSON. Requests are searched on
+ * a fixed pool of workers with a bounded queue: once the queue is full, new
+ * requests are turned away with 503 straight away rather than waiting. A
+ * budget in milliseconds counts from when the request arrived, so a request
+ * is answered within it however long it queued, and one whose budget runs out
+ * in the queue is turned away with 503 too. Their latency, from arriving to
+ * being answered, is reported by /stats.
+ *
+ * @author Aidan O'Grady
+ * @since 0.3
+ */
+public class PrioritisationServer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrioritisationServer.class);
+
+    /**
+     * The properties of the searches, which requests override.
+     */
+    private final Properties props;
+
+    /**
+     * The loaded fault matrices by name.
+     */
+    private final Map<String, List<TestCase>> datasets;
+
+    /**
+     * The reduced suites by dataset and size, reduced on first use.
+     */
+    private final Map<String, List<TestCase>> reduced = new ConcurrentHashMap<>();
+
+    /**
+     * The searches by algorithm name.
+     */
+    private final Map<String, Search> searches = Search.byName();
+
+    /**
+     * The workers searching for requests.
+     */
+    private final ThreadPoolExecutor workers;
+
+    /**
+     * The HTTP server accepting requests.
+     */
+    private final HttpServer server;
+
+    /**
+     * The latency of each request answered, in nanoseconds.
+     */
+    private final Histogram latency = new Histogram();
+
+    /**
+     * The number of requests answered with an ordering.
+     */
+    private final LongAdder served = new LongAdder();
+
+    /**
+     * The number of requests turned away because the queue was full.
+     */
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * The number of requests that were invalid or failed.
+     */
+    private final LongAdder failed = new LongAdder();
+
+    /**
+     * Constructor, binding to the server.port property, 8547 by default. The
+     * pool has server.threads workers, the number of available processors by
+     * default, queueing up to server.queue requests, 16 by default.
+     *
+     * @param props the properties of the searches
+     * @param datasets the loaded fault matrices by name
+     * @throws IOException if the port cannot be bound
+     * @throws IllegalArgumentException if ga.checkpoint is given
+     */
+    public PrioritisationServer(Properties props, Map<String, List<TestCase>> datasets) throws IOException {
+        this.props = props;
+        this.datasets = datasets;
+        // Requests with the same seed would share a checkpoint.
+        if (props.getProperty("ga.checkpoint") != null)
+            throw new IllegalArgumentException("ga.checkpoint cannot be used by the server");
+
+        int port = Integer.parseInt(props.getProperty("server.port", "8547"));
+        String threads = props.getProperty("server.threads");
+        int poolSize = threads == null
+                ? Runtime.getRuntime().availableProcessors()
+                : Integer.parseInt(threads);
+        int queue = Integer.parseInt(props.getProperty("server.queue", "16"));
+
+        AtomicInteger count = new AtomicInteger(1);
+        workers = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queue), r -> {
+                    Thread thread = new Thread(r, "server-worker-" + count.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        // Handlers run on the server's own thread, and only hand the
+        // request to the workers, so a full queue is answered at once.
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/prioritise", this::prioritise);
+        server.createContext("/stats", this::stats);
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, giving those in progress a second to finish.
+     */
+    public void stop() {
+        server.stop(1);
+        workers.shutdownNow();
+    }
+
+    /**
+     * Returns the port requests are accepted on.
+     *
+     * @return port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Queues a prioritisation request for the workers, or turns it away if
+     * the queue is full.
+     *
+     * @param exchange the request
+     * @throws IOException if the response cannot be sent
+     */
+    private void prioritise(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            workers.execute(() -> {
+                try {
+                    respond(exchange, 200, search(parse(exchange.getRequestURI().getRawQuery()), start));
+                    served.increment();
+                } catch (IllegalArgumentException e) {
+                    failed.increment();
+                    respond(exchange, 400, error(e.getMessage()));
+                } catch (RejectedExecutionException e) {
+                    rejected.increment();
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    respond(exchange, 503, error(e.getMessage()));
+                } catch (RuntimeException e) {
+                    failed.increment();
+                    LOGGER.error("Request failed", e);
+                    respond(exchange, 500, error(String.valueOf(e.getMessage())));
+                } finally {
+                    latency.record(System.nanoTime() - start);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, 503, error("server busy"));
+        }
+    }
+
+    /**
+     * Searches for the ordering asked for by a request. A budget in
+     * milliseconds counts from when the request arrived, so time spent in
+     * the queue is taken out of it.
+     *
+     * @param params the parameters of the request
+     * @param arrived when the request arrived, from System.nanoTime
+     * @return the response as JSON
+     * @throws RejectedExecutionException if the request's budget ran out
+     * while it was queued
+     */
+    private String search(Map<String, String> params, long arrived) {
+        String name = params.get("dataset");
+        if (name == null && datasets.size() == 1)
+            name = datasets.keySet().iterator().next();
+        List<TestCase> cases = datasets.get(name);
+        if (cases == null)
+            throw new IllegalArgumentException("unknown dataset " + name);
+        String algorithm = params.getOrDefault("algorithm", "ga");
+        Search search = searches.get(algorithm);
+        if (search == null)
+            throw new IllegalArgumentException("unknown algorithm " + algorithm);
+
+        Properties request = new Properties(props);
+        copy(params, "size", request, "size");
+        copy(params, "millis", request, "budget.millis");
+        copy(params, "evaluations", request, "budget.evaluations");
+        copy(params, "seed", request, "seed");
+        int size;
+        SearchControl control;
+        Rng rng;
+        try {
+            size = Integer.parseInt(request.getProperty("size"));
+            long budget = Long.parseLong(request.getProperty("budget.millis", "0"));
+            if (budget > 0) {
+                long left = budget - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - arrived);
+                if (left <= 0)
+                    throw new RejectedExecutionException("budget of " + budget + "ms ran out in the queue");
+                request.setProperty("budget.millis", String.valueOf(left));
+            }
+            control = SearchControl.fromProperties(request);
+            rng = Rng.fromProperties(request);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid number " + e.getMessage());
+        }
+        if (size < 2 || size > cases.size())
+            throw new IllegalArgumentException("size must be from 2 to " + cases.size());
+
+        if (Boolean.parseBoolean(request.getProperty("reduce", "true"))) {
+            List<TestCase> all = cases;
+            cases = reduced.computeIfAbsent(name + "#" + size,
+                    k -> SuiteReduction.reduce(all, size).getTestCases());
+        }
+
+        long start = System.currentTimeMillis();
+        Result result = search.searchAndRecord(request, cases, rng, control);
+        long millis = System.currentTimeMillis() - start;
+
+        TCChromosome best = result.getResult();
+        StringBuilder json = new StringBuilder("{\"dataset\": ");
+        quote(json, name);
+        json.append(", \"algorithm\": ");
+        quote(json, algorithm);
+        json.append(", \"size\": ").append(size)
+                .append(", \"fitness\": ").append(best.getFitness())
+                .append(", \"ordering\": [");
+        List<TestCase> candidate = best.getCandidate();
+        for (int i = 0; i < candidate.size(); i++) {
+            if (i > 0)
+                json.append(", ");
+            quote(json, candidate.get(i).getTestName());
+        }
+        json.append("], \"evaluations\": ").append(control.getEvaluations())
+                .append(", \"millis\": ").append(millis).append('}');
+        return json.toString();
+    }
+
+    /**
+     * Reports the number of requests served, turned away and failed, and the
+     * latency of those answered.
+     *
+     * @param exchange the request
+     * @throws IOException if the response cannot be sent
+     */
+    private void stats(HttpExchange exchange) throws IOException {
+        double ms = 1e6;
+        String json = "{\"served\": " + served.sum()
+                + ", \"rejected\": " + rejected.sum()
+                + ", \"failed\": " + failed.sum()
+                + ", \"queued\": " + workers.getQueue().size()
+                + ", \"latencyMeanMillis\": " + latency.getMean() / ms
+                + ", \"latencyP50Millis\": " + latency.getValueAtPercentile(50) / ms
+                + ", \"latencyP99Millis\": " + latency.getValueAtPercentile(99) / ms
+                + ", \"latencyMaxMillis\": " + latency.getMax() / ms + "}";
+        respond(exchange, 200, json);
+    }
+
+    /**
+     * Sends a JSON response and closes the exchange.
+     *
+     * @param exchange the request
+     * @param status the HTTP status
+     * @param json the body
+     */
+    private static void respond(HttpExchange exchange, int status, String json) {
+        byte[] body = (json + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.sendResponseHeaders(status, body.length);
+            out.write(body);
+        } catch (IOException e) {
+            LOGGER.debug("Could not respond to request", e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Returns an error response.
+     *
+     * @param message what went wrong
+     * @return the response as JSON
+     */
+    private static String error(String message) {
+        StringBuilder json = new StringBuilder("{\"error\": ");
+        quote(json, message);
+        return json.append('}').toString();
+    }
+
+    /**
+     * Parses the parameters of a query string.
+     *
+     * @param query the raw query, or null
+     * @return parameters by name
+     */
+    private static Map<String, String> parse(String query) {
+        Map<String, String> params = new LinkedHashMap<>();
+        if (query == null)
+            return params;
+        try {
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq > 0)
+                    params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+                            URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return params;
+    }
+
+    /**
+     * Copies a request parameter into the properties of the search, if given.
+     *
+     * @param params the parameters of the request
+     * @param param the parameter to copy
+     * @param request the properties of the search
+     * @param prop the property to copy to
+     */
+    private static void copy(Map<String, String> params, String param, Properties request, String prop) {
+        String value = params.get(param);
+        if (value != null)
+            request.setProperty(prop, value);
+    }
+
+    /**
+     * Appends the given string as a JSON string.
+     *
+     * @param json the builder to append to
+     * @param value the string
+     */
+    private static void quote(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+                json.append('\\').append(c);
+            else if (c < 0x20)
+                json.append(String.format("\\u%04x", (int) c));
+            else
+                json.append(c);
+        }
+        json.append('"');
+    }
+}